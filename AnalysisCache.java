@@ -0,0 +1,318 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <!-- class AnalysisCache -->
+ *
+ * Remembers the expensive analyses of state machines (the shortest blind
+ * path, the average steps to goal with it and the distance from every state)
+ * on disk so that sweeps over the same machines don't find them again.
+ *
+ * Each analysis is stored in its own file named by a SHA-256 hash of the
+ * machine (its size, goal and transition table), so two machines share an
+ * entry only if they're identical no matter where they came from.  Entries
+ * are written to a temporary file and then moved into place, so several
+ * processes can share one cache directory and a crash never leaves half an
+ * entry behind.  The most recently used entries are also kept in memory,
+ * up to MEMORY_CELLS distances in all.
+ *
+ * A machine can also be analyzed through its quotient (@see
+ * MinimizedMachine): the quotient is what gets searched and cached, and its
+ * analysis is mapped back onto the machine's own states.
+ *
+ * File layout (all values big-endian):
+ *
+ *   int     MAGIC
+ *   int     VERSION
+ *   int     number of states, alphabet size, goal state
+ *   int     length of the blind path (-1 if there isn't one), then its actions
+ *   int     average steps to goal with the path
+ *   long    nodes expanded, nodes generated, milliseconds the search took
+ *   boolean whether the path is known to be the shortest
+ *   int     distance from each state to the goal
+ *
+ * @version February 26 2015
+ */
+public class AnalysisCache {
+
+    public static final int MAGIC = 0x46534D41;  //"FSMA"
+    public static final int VERSION = 1;
+
+    /** the analyses kept in memory hold at most this many distances in all (16MB) */
+    public static final int MEMORY_CELLS = 1 << 22;
+
+    private final File directory;
+
+    //recently used analyses, least recently used first (guarded by this)
+    private final LinkedHashMap<String, Analysis> memory =
+        new LinkedHashMap<String, Analysis>(16, 0.75f, true);
+    private long memoryCells = 0;
+
+    /**
+     * class Analysis
+     *
+     * everything the cache knows about one machine
+     */
+    public static class Analysis {
+        public final BlindPathSearch.Result search;  //the shortest blind path
+        public final int avgSteps;    //average steps to goal following the path
+        public final int[] distance;  //distance from each state to the goal
+
+        public Analysis(BlindPathSearch.Result search, int avgSteps, int[] distance) {
+            this.search = search;
+            this.avgSteps = avgSteps;
+            this.distance = distance;
+        }
+
+        public String toString() {
+            return search + "[Avg steps: " + avgSteps + "]";
+        }
+    }//class Analysis
+
+    /**
+     * uses (and creates if needed) the given directory to store the cache
+     */
+    public AnalysisCache(File directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Returns the analysis of the given machine, finding it (and storing it)
+     * if it isn't cached yet.  Failing to store it is reported but not fatal.
+     *
+     * @param numThreads how many threads to search for the blind path with
+     */
+    public Analysis analyze(StateMachine machine, int numThreads) {
+        String key = keyOf(machine);
+        Analysis analysis = get(machine, key);
+        if (analysis != null) return analysis;
+
+        BlindPathSearch search = new BlindPathSearch(machine);
+        BlindPathSearch.Result result = (numThreads <= 1) ? search.aStar()
+                                                          : search.parallelAStar(numThreads);
+        int avgSteps = (result.path == null) ? -1 : machine.avgStepsToGoalWithPath(result.path);
+        int[] distance = new int[machine.getNumStates()];
+        for (int i = 0; i < distance.length; ++i) {
+            distance[i] = machine.getDistance(i);
+        }
+        analysis = new Analysis(result, avgSteps, distance);
+
+        try {
+            put(key, machine, analysis);
+        }
+        catch (IOException e) {
+            System.out.println("AnalysisCache: could not store " + key + ": " + e.getMessage());
+            remember(key, analysis);
+        }
+        return analysis;
+    }//analyze
+
+    /**
+     * Returns the analysis of a machine found through its quotient: the
+     * quotient's analysis is looked up (or found and stored) and then mapped
+     * back.  The path is the same, the average is weighted by the size of
+     * each class and each state gets its class's distance.
+     *
+     * @param numThreads how many threads to search for the blind path with
+     */
+    public Analysis analyze(MinimizedMachine minimized, int numThreads) {
+        Analysis quotient = analyze(minimized.getQuotient(), numThreads);
+
+        int[] path = quotient.search.path;
+        int avgSteps = (path == null) ? -1 : minimized.avgStepsToGoalWithPath(path);
+        int[] distance = new int[minimized.getOriginal().getNumStates()];
+        for (int i = 0; i < distance.length; ++i) {
+            distance[i] = quotient.distance[minimized.classOf(i)];
+        }
+        return new Analysis(quotient.search, avgSteps, distance);
+    }//analyze
+
+    /**
+     * @return the cached analysis of the given machine or null if there isn't
+     *         one (or it can't be read)
+     */
+    public Analysis get(StateMachine machine) {
+        return get(machine, keyOf(machine));
+    }
+
+    private Analysis get(StateMachine machine, String key) {
+        Analysis analysis = recall(key);
+        if (analysis != null) return analysis;
+
+        File file = fileFor(key);
+        if (!file.isFile()) return null;
+        try {
+            analysis = read(file, machine);
+        }
+        catch (IOException e) {
+            return null;  //a damaged entry is just found again
+        }
+        if (analysis != null) remember(key, analysis);
+        return analysis;
+    }//get
+
+    /**
+     * stores the given analysis of the given machine
+     */
+    public void put(StateMachine machine, Analysis analysis) throws IOException {
+        put(keyOf(machine), machine, analysis);
+    }
+
+    private void put(String key, StateMachine machine, Analysis analysis) throws IOException {
+        File temp = File.createTempFile(key, ".tmp", directory);
+        try {
+            write(temp, machine, analysis);
+            try {
+                Files.move(temp.toPath(), fileFor(key).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), fileFor(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+        remember(key, analysis);
+    }//put
+
+    private synchronized Analysis recall(String key) {
+        return memory.get(key);
+    }
+
+    /**
+     * keeps the given analysis in memory, dropping the least recently used
+     * ones until they fit in MEMORY_CELLS (the newest is kept regardless)
+     */
+    private synchronized void remember(String key, Analysis analysis) {
+        Analysis old = memory.put(key, analysis);
+        if (old != null) memoryCells -= old.distance.length;
+        memoryCells += analysis.distance.length;
+
+        Iterator<Analysis> eldest = memory.values().iterator();
+        while (memoryCells > MEMORY_CELLS && memory.size() > 1) {
+            memoryCells -= eldest.next().distance.length;
+            eldest.remove();
+        }
+    }//remember
+
+    private File fileFor(String key) {
+        return new File(directory, key + ".fsma");
+    }
+
+    /**
+     * ************************************************************************************
+     * METHODS FOR READING AND WRITING ENTRIES
+     * ************************************************************************************
+     */
+
+    /**
+     * @return the hex SHA-256 hash of the machine's size, goal and transitions
+     */
+    public static String keyOf(StateMachine machine) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);  //every JVM has it
+        }
+
+        int numStates = machine.getNumStates();
+        int alphabetSize = machine.getAlphabetSize();
+        ByteBuffer buffer = ByteBuffer.allocate(4 * Math.max(3, alphabetSize) * 1024);
+        buffer.putInt(numStates).putInt(alphabetSize).putInt(machine.getGoalState());
+        for (int i = 0; i < numStates; ++i) {
+            if (buffer.remaining() < 4 * alphabetSize) {
+                digest.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            for (int j = 0; j < alphabetSize; ++j) {
+                buffer.putInt(machine.next(i, j));
+            }
+        }
+        digest.update(buffer.array(), 0, buffer.position());
+
+        StringBuilder key = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16));
+            key.append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }//keyOf
+
+    private static void write(File file, StateMachine machine, Analysis analysis)
+        throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(machine.getNumStates());
+            out.writeInt(machine.getAlphabetSize());
+            out.writeInt(machine.getGoalState());
+
+            int[] path = analysis.search.path;
+            out.writeInt(path == null ? -1 : path.length);
+            if (path != null) {
+                for (int action : path) out.writeInt(action);
+            }
+            out.writeInt(analysis.avgSteps);
+            out.writeLong(analysis.search.nodesExpanded);
+            out.writeLong(analysis.search.nodesGenerated);
+            out.writeLong(analysis.search.millis);
+            out.writeBoolean(analysis.search.optimal);
+            for (int d : analysis.distance) out.writeInt(d);
+        }
+    }//write
+
+    /**
+     * @return the analysis in the given file or null if it's for a different
+     *         machine (which would take a hash collision)
+     */
+    private static Analysis read(File file, StateMachine machine) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            int numStates = in.readInt();
+            if (numStates != machine.getNumStates()
+                || in.readInt() != machine.getAlphabetSize()
+                || in.readInt() != machine.getGoalState()) {
+                return null;
+            }
+
+            int length = in.readInt();
+            if (length < -1 || length > file.length() / 4) return null;
+            int[] path = null;
+            if (length >= 0) {
+                path = new int[length];
+                for (int i = 0; i < length; ++i) path[i] = in.readInt();
+            }
+            int avgSteps = in.readInt();
+            long nodesExpanded = in.readLong();
+            long nodesGenerated = in.readLong();
+            long millis = in.readLong();
+            boolean optimal = in.readBoolean();
+            int[] distance = new int[numStates];
+            for (int i = 0; i < numStates; ++i) distance[i] = in.readInt();
+
+            return new Analysis(new BlindPathSearch.Result(path, nodesExpanded, nodesGenerated,
+                                                           millis, optimal),
+                                avgSteps, distance);
+        }
+    }//read
+
+}//class AnalysisCache
@@ -0,0 +1,976 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <!-- class BlindPathSearch -->
+ *
+ * Finds the shortest "blind" path for a state machine: a sequence of actions
+ * that reaches the goal no matter which state the agent starts in, given a
+ * perfect model of the machine.
+ *
+ * The search works on belief states, the set of states the agent could be in
+ * after following a path so far.  States that reach the goal drop out of the
+ * belief (the agent is done once it gets there), so the search is over when
+ * the belief is empty.
+ *
+ * CAVEAT: This is solving an NP-hard problem and can take a really long time
+ * on larger FSMs.  {@link #parallelAStar} spreads the work over several
+ * threads and {@link #greedy} quickly finds a path that is usually (but not
+ * always) a bit longer than the shortest one.
+ *
+ * @version February 26 2015
+ */
+public class BlindPathSearch {
+
+    /**
+     * class Result
+     *
+     * the path found by a search along with some statistics about the search
+     */
+    public static class Result {
+        public final int[] path;           //the path or null if none was found
+        public final long nodesExpanded;   //how many nodes were expanded
+        public final long nodesGenerated;  //how many nodes were created
+        public final long millis;          //how long the search took
+        public final boolean optimal;      //is the path known to be the shortest?
+
+        public Result(int[] path, long nodesExpanded, long nodesGenerated, long millis) {
+            this(path, nodesExpanded, nodesGenerated, millis, true);
+        }
+
+        public Result(int[] path, long nodesExpanded, long nodesGenerated, long millis,
+                      boolean optimal) {
+            this.path = path;
+            this.nodesExpanded = nodesExpanded;
+            this.nodesGenerated = nodesGenerated;
+            this.millis = millis;
+            this.optimal = optimal;
+        }
+
+        public String toString() {
+            return "[Path len: " + (path == null ? "none" : "" + path.length)
+                + (optimal ? "" : " (maybe not shortest)")
+                + "| Expanded: " + nodesExpanded + "| Generated: " + nodesGenerated
+                + "| Time: " + millis + "ms]";
+        }
+    }//class Result
+
+    /**
+     * class Belief
+     *
+     * the canonical form of a belief state: the set of distinct non-goal
+     * states the agent could be in, stored as a bitset (bit i of word i/64 is
+     * set if the agent could be in state i).  Trailing empty words are
+     * dropped so beliefs that contain the same states are equal no matter
+     * which path led to them.
+     */
+    static final class Belief {
+        final long[] words;
+        private final int hash;
+
+        Belief(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        boolean isEmpty() {
+            return words.length == 0;
+        }
+
+        /** @return how many states the agent could be in */
+        int size() {
+            int size = 0;
+            for (long word : words) {
+                size += Long.bitCount(word);
+            }
+            return size;
+        }
+
+        /**
+         * @return the lowest state in this belief that is at least the given
+         *         one or -1 if there isn't one
+         */
+        int nextState(int from) {
+            int w = from >>> 6;
+            if (w >= words.length) return -1;
+            long word = words[w] & (-1L << from);
+            while (true) {
+                if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+                if (++w == words.length) return -1;
+                word = words[w];
+            }
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        /** @return a 64-bit hash (for tables that keep only the hash) */
+        long hash64() {
+            long h = words.length;
+            for (long word : words) {
+                h = (h ^ word) * 0x9E3779B97F4A7C15L;
+                h ^= h >>> 29;
+            }
+            return h;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Belief)) return false;
+            Belief that = (Belief)other;
+            return hash == that.hash && Arrays.equals(words, that.words);
+        }
+    }//class Belief
+
+    /**
+     * class Node
+     *
+     * a node in the A* search.  Instead of a copy of its path each node points
+     * back at its parent.
+     */
+    static final class Node {
+        final Belief belief;
+        final Node parent;
+        final int action;  //action that led here from the parent
+        final int g;       //length of the path so far
+        final int h;       //heuristic estimate of the remaining length
+
+        Node(Belief belief, Node parent, int action, int g, int h) {
+            this.belief = belief;
+            this.parent = parent;
+            this.action = action;
+            this.g = g;
+            this.h = h;
+        }
+
+        int getF() { return g + h; }
+
+        /** @return the actions that lead from the root to this node */
+        int[] path() {
+            int[] path = new int[g];
+            Node node = this;
+            for (int i = g - 1; i >= 0; i--) {
+                path[i] = node.action;
+                node = node.parent;
+            }
+            return path;
+        }
+    }//class Node
+
+    /** order nodes by f, preferring deeper nodes to break ties */
+    static final Comparator<Node> BY_F = new Comparator<Node>() {
+        public int compare(Node a, Node b) {
+            if (a.getF() != b.getF()) return Integer.compare(a.getF(), b.getF());
+            return Integer.compare(b.g, a.g);
+        }
+    };
+
+    private final StateMachine machine;
+    private final int goal;
+
+    //scratch space for building child beliefs
+    private final long[] scratch;
+
+    public BlindPathSearch(StateMachine machine) {
+        this.machine = machine;
+        this.goal = machine.getGoalState();
+        this.scratch = newScratch();
+    }
+
+    /** @return space for building a belief about any of the machine's states */
+    long[] newScratch() {
+        return new long[(machine.getNumStates() + 63) >>> 6];
+    }
+
+    /**
+     * @return the belief of an agent that could be in any state
+     */
+    Belief initialBelief() {
+        long[] words = newScratch();
+        for (int i = 0; i < machine.getNumStates(); ++i) {
+            if (i != goal) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+        return new Belief(trim(words));
+    }
+
+    /**
+     * @return the belief that results from taking the given action in every
+     *         state of the given belief
+     */
+    Belief advance(Belief belief, int action) {
+        return advance(belief, action, scratch);
+    }
+
+    /**
+     * @see #advance(Belief, int)
+     *
+     * @param scratch all zeros and at least as long as {@link #newScratch};
+     *                it's left all zeros again
+     */
+    Belief advance(Belief belief, int action, long[] scratch) {
+        final int[] image = machine.image(action);
+        final long[] words = belief.words;
+        int top = -1;  //highest word of scratch that was touched
+
+        for (int w = 0; w < words.length; ++w) {
+            long word = words[w];
+            while (word != 0) {
+                int next = image[(w << 6) + Long.numberOfTrailingZeros(word)];
+                word &= word - 1;
+                if (next != goal) {
+                    scratch[next >>> 6] |= 1L << next;
+                    top = Math.max(top, next >>> 6);
+                }
+            }
+        }
+
+        long[] result = trim(Arrays.copyOf(scratch, top + 1));
+        Arrays.fill(scratch, 0, top + 1, 0L);
+        return new Belief(result);
+    }
+
+    /** @return the given words without any trailing empty ones */
+    private static long[] trim(long[] words) {
+        int length = words.length;
+        while (length > 0 && words[length - 1] == 0) length--;
+        return (length == words.length) ? words : Arrays.copyOf(words, length);
+    }
+
+    /** beliefs with at most this many states have all their pairs checked */
+    static final int ALL_PAIRS_LIMIT = 16;
+
+    /**
+     * calculates the 'h' (heuristic) value for A* search.  Any blind path
+     * must be at least as long as the longest remaining shortest path, and
+     * (on machines small enough to have a pair table) at least as long as
+     * the shortest word that takes any two of the states to the goal.  Small
+     * beliefs check every pair; larger ones only pair each state with the
+     * one that's furthest from the goal.  Either way the estimate never
+     * overshoots.
+     */
+    int heuristic(Belief belief) {
+        return heuristic(belief, true);
+    }
+
+    /**
+     * @see #heuristic(Belief)
+     *
+     * @param usePairs whether the pair table may be used (building it can
+     *                 take seconds on the biggest machines that get one)
+     */
+    int heuristic(Belief belief, boolean usePairs) {
+        int h = 0;
+        int farthest = -1;
+        int size = 0;
+        for (int state = belief.nextState(0); state >= 0; state = belief.nextState(state + 1)) {
+            if (machine.getDistance(state) >= h) {
+                h = machine.getDistance(state);
+                farthest = state;
+            }
+            size++;
+        }
+        if (size < 2 || !usePairs || machine.getNumStates() > StateMachine.PAIR_TABLE_MAX_STATES) {
+            return h;
+        }
+
+        for (int p = belief.nextState(0); p >= 0; p = belief.nextState(p + 1)) {
+            if (size <= ALL_PAIRS_LIMIT) {
+                for (int q = belief.nextState(p + 1); q >= 0; q = belief.nextState(q + 1)) {
+                    h = Math.max(h, machine.getPairDistance(p, q));
+                }
+            }
+            else if (p != farthest) {
+                h = Math.max(h, machine.getPairDistance(p, farthest));
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Finds a shortest blind path with A* search.  Nodes are kept in a
+     * priority queue and every belief is expanded at most once for each
+     * distinct (shorter) path that reaches it.
+     */
+    public Result aStar() {
+        long start = System.currentTimeMillis();
+        long expanded = 0;
+        long generated = 1;
+
+        Belief root = initialBelief();
+        if (root.isEmpty()) {
+            return new Result(new int[0], 0, generated, System.currentTimeMillis() - start);
+        }
+
+        PriorityQueue<Node> open = new PriorityQueue<Node>(BY_F);
+        HashMap<Belief, Integer> bestG = new HashMap<Belief, Integer>();
+        open.add(new Node(root, null, -1, 0, heuristic(root)));
+        bestG.put(root, 0);
+
+        //Main search loop
+        while (!open.isEmpty()) {
+            Node parent = open.poll();
+
+            //skip nodes that were reached again by a shorter path
+            if (parent.g > bestG.get(parent.belief)) continue;
+            expanded++;
+
+            for (int c = 0; c < machine.getAlphabetSize(); ++c) {
+                Belief belief = advance(parent.belief, c);
+                int g = parent.g + 1;
+                generated++;
+
+                //Did we find the shortest path?  (Since every step costs one
+                //and the heuristic never overshoots, the first empty belief
+                //we generate is at least as short as any other.)
+                if (belief.isEmpty()) {
+                    Node done = new Node(belief, parent, c, g, 0);
+                    return new Result(done.path(), expanded, generated,
+                                      System.currentTimeMillis() - start);
+                }
+
+                Integer seen = bestG.get(belief);
+                if (seen != null && seen <= g) continue;
+
+                bestG.put(belief, g);
+                open.add(new Node(belief, parent, c, g, heuristic(belief)));
+            }//for
+        }//while
+
+        //should not be reached on machines where every state can reach goal
+        return new Result(null, expanded, generated, System.currentTimeMillis() - start);
+    }//aStar
+
+    /**
+     * Quickly finds a blind path that is not necessarily the shortest.
+     *
+     * The belief is shrunk one step at a time: two of the states the agent
+     * could be in are picked and the shortest word that either sends them to
+     * the same state or sends one of them to the goal is appended to the path
+     * (see {@link #mergeWord}).  Either way the belief loses at least one
+     * state.  Once a single state is left the agent knows where it is and
+     * simply follows that state's shortest path to the goal.
+     *
+     * Each merge is a breadth-first search over pairs of states that stops as
+     * soon as one of the states has reached the goal, so it never looks
+     * deeper than the pair's distance to the goal.  This makes the whole
+     * search polynomial in the size of the machine.
+     */
+    public Result greedy() {
+        return greedy(NO_DEADLINE);
+    }//greedy
+
+    /** a deadline that is never reached */
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /** @return true if the given System.nanoTime() deadline has passed */
+    private static boolean pastDeadline(long deadline) {
+        return deadline != NO_DEADLINE && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * @see #greedy()
+     *
+     * @param deadline System.nanoTime() to give up at (the result then has
+     *                 no path)
+     */
+    private Result greedy(long deadline) {
+        long start = System.currentTimeMillis();
+        long[] counts = new long[2];  //nodes expanded and generated
+
+        Belief belief = initialBelief();
+        int[] path = new int[16];
+        int length = 0;
+
+        while (belief.size() > 1) {
+            int first = belief.nextState(0);
+            int[] word = mergeWord(first, belief.nextState(first + 1), counts, deadline);
+            if (word == null || pastDeadline(deadline)) {
+                return new Result(null, counts[0], counts[1],
+                                  System.currentTimeMillis() - start, false);
+            }
+            for (int action : word) {
+                if (length == path.length) path = Arrays.copyOf(path, 2 * length);
+                path[length++] = action;
+                belief = advance(belief, action);
+            }
+        }
+
+        //only one possible state left so just head to the goal from there
+        if (!belief.isEmpty()) {
+            int state = belief.nextState(0);
+            while (state != goal) {
+                int action = machine.getNextAction(state);
+                if (action < 0) {
+                    //should not be reached on machines where every state can reach goal
+                    return new Result(null, counts[0], counts[1],
+                                      System.currentTimeMillis() - start, false);
+                }
+                if (length == path.length) path = Arrays.copyOf(path, 2 * length);
+                path[length++] = action;
+                state = machine.next(state, action);
+            }
+        }
+
+        return new Result(Arrays.copyOf(path, length), counts[0], counts[1],
+                          System.currentTimeMillis() - start, false);
+    }//greedy
+
+    /**
+     * finds the shortest word that, starting from the two given (distinct,
+     * non-goal) states, leaves them in the same state or takes at least one
+     * of them through the goal
+     *
+     * @param counts   nodes expanded and generated are added to counts[0] and
+     *                 counts[1]
+     * @param deadline System.nanoTime() to give up at
+     * @return the word or null if the deadline passed first
+     */
+    int[] mergeWord(int p, int q, long[] counts, long deadline) {
+        final long numStates = machine.getNumStates();
+
+        //breadth-first search over pairs; each pair is packed into a long and
+        //remembers where it came from so the word can be read back out
+        PairSearch search = pairSearch;
+        search.clear();
+        long[] pairs = search.pairs;
+        int[] parents = search.parents;
+        int[] actions = search.actions;
+
+        pairs[0] = Math.min(p, q) * numStates + Math.max(p, q);
+        parents[0] = -1;
+        search.visit(pairs[0]);
+        int head = 0;
+        int tail = 1;
+        counts[1]++;
+
+        while (head < tail) {
+            int current = head++;
+            int a = (int)(pairs[current] / numStates);
+            int b = (int)(pairs[current] % numStates);
+            counts[0]++;
+            if ((current & 0xFF) == 0 && pastDeadline(deadline)) return null;
+
+            for (int c = 0; c < machine.getAlphabetSize(); ++c) {
+                int nextA = machine.next(a, c);
+                int nextB = machine.next(b, c);
+                counts[1]++;
+
+                if (nextA == nextB || nextA == goal || nextB == goal) {
+                    //read the word back by following the parents
+                    int size = 1;
+                    for (int i = current; parents[i] >= 0; i = parents[i]) size++;
+                    int[] word = new int[size];
+                    word[size - 1] = c;
+                    for (int i = current, j = size - 2; parents[i] >= 0; i = parents[i], j--) {
+                        word[j] = actions[i];
+                    }
+                    return word;
+                }
+
+                long pair = Math.min(nextA, nextB) * numStates + Math.max(nextA, nextB);
+                if (!search.visit(pair)) continue;
+
+                if (tail == pairs.length) {
+                    search.grow();
+                    pairs = search.pairs;
+                    parents = search.parents;
+                    actions = search.actions;
+                }
+                pairs[tail] = pair;
+                parents[tail] = current;
+                actions[tail] = c;
+                tail++;
+            }//for
+        }//while
+
+        //should not be reached on machines where every state can reach goal
+        throw new IllegalStateException("states " + p + " and " + q + " can't reach the goal");
+    }//mergeWord
+
+    //scratch space for mergeWord, kept from one merge to the next
+    private final PairSearch pairSearch = new PairSearch();
+
+    /**
+     * class PairSearch
+     *
+     * the queue and visited set of a breadth-first search over pairs of
+     * states (@see #mergeWord).  Merges happen thousands of times on a big
+     * machine so nothing is allocated per merge once the arrays are big
+     * enough: the visited set is an open-addressing table of packed pairs
+     * whose slots count as empty unless they were stamped during the
+     * current search, so clearing it is just starting a new one.
+     */
+    static final class PairSearch {
+        long[] pairs = new long[16];
+        int[] parents = new int[16];
+        int[] actions = new int[16];
+
+        private long[] keys = new long[1 << 10];
+        private int[] stamps = new int[1 << 10];
+        private int stamp = 1;
+        private int size = 0;
+
+        /** forgets every pair visited so far */
+        void clear() {
+            size = 0;
+            if (++stamp == 0) {
+                Arrays.fill(stamps, 0);  //every stamp has been used; start over
+                stamp = 1;
+            }
+        }
+
+        /** @return true if the given pair hadn't been visited yet (it now has) */
+        boolean visit(long pair) {
+            if (2 * (size + 1) > keys.length) rehash(2 * keys.length);
+            int mask = keys.length - 1;
+            for (int slot = slotOf(pair, mask); ; slot = (slot + 1) & mask) {
+                if (stamps[slot] != stamp) {
+                    keys[slot] = pair;
+                    stamps[slot] = stamp;
+                    size++;
+                    return true;
+                }
+                if (keys[slot] == pair) return false;
+            }
+        }
+
+        /** doubles the size of the queue */
+        void grow() {
+            pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+            parents = Arrays.copyOf(parents, 2 * parents.length);
+            actions = Arrays.copyOf(actions, 2 * actions.length);
+        }
+
+        private static int slotOf(long pair, int mask) {
+            long h = pair * 0x9E3779B97F4A7C15L;
+            return (int)(h >>> 32) & mask;
+        }
+
+        /** moves the pairs visited in the current search into a bigger table */
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldStamps = stamps;
+            keys = new long[capacity];
+            stamps = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldStamps[i] != stamp) continue;
+                int slot = slotOf(oldKeys[i], mask);
+                while (stamps[slot] == stamp) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                stamps[slot] = stamp;
+            }
+        }
+    }//class PairSearch
+
+    /** default number of entries (as a power of two) in the IDA* transposition table */
+    public static final int DEFAULT_TABLE_BITS = 20;
+
+    /**
+     * Finds a shortest blind path with iterative-deepening A* (IDA*), giving
+     * up after the given amount of time.
+     *
+     * Instead of a queue of every node it has seen, IDA* keeps only the path
+     * it's currently on: it runs depth-first searches that go no further
+     * than a bound on f, raising the bound to the smallest f that went over
+     * it each time one fails.  Working memory is just one belief per step of
+     * the path plus a fixed-size transposition table that remembers (by hash)
+     * how deep each belief was seen during the current search, so beliefs
+     * reached again no earlier aren't searched twice.  When the table is
+     * full newer beliefs simply overwrite older ones.
+     *
+     * So that there's always an answer, a path is first found with
+     * {@link #greedy} (which gives up at the same deadline) and IDA* then
+     * only looks for a shorter one.  If time runs out the greedy path is
+     * returned (not known to be the shortest); if the bound reaches its
+     * length the greedy path is known to be shortest.  Nothing is done
+     * outside the time limit: the pair table is only used by the heuristic
+     * if it has already been built (@see StateMachine#getPairDistance).  The
+     * result has no path only if even the greedy search ran out of time.
+     *
+     * @param budgetMillis how long to search for (in ms) before giving up
+     * @param tableBits    the transposition table has 2^tableBits entries
+     */
+    public Result idaStar(long budgetMillis, int tableBits) {
+        long start = System.currentTimeMillis();
+        long deadline = System.nanoTime() + budgetMillis * 1000000L;
+
+        Belief root = initialBelief();
+        if (root.isEmpty()) {
+            return new Result(new int[0], 0, 1, System.currentTimeMillis() - start);
+        }
+
+        //the incumbent that IDA* has to beat
+        Result greedy = greedy(deadline);
+        if (greedy.path == null) {
+            return new Result(null, greedy.nodesExpanded, greedy.nodesGenerated,
+                              System.currentTimeMillis() - start, false);
+        }
+
+        IdaSearch search = new IdaSearch(tableBits, deadline, machine.hasPairTable());
+        search.generated = 1;
+
+        int[] best = greedy.path;
+        boolean optimal = false;
+        int bound = heuristic(root, search.usePairs);
+        while (true) {
+            //nothing shorter than the greedy path is left to find
+            if (bound >= greedy.path.length) {
+                optimal = true;
+                break;
+            }
+            search.iteration++;
+            search.nextBound = Integer.MAX_VALUE;
+            if (search.search(root, 0, bound)) {
+                best = Arrays.copyOf(search.path, search.pathLength);
+                optimal = true;
+                break;
+            }
+            if (search.timedOut || search.nextBound == Integer.MAX_VALUE) break;
+            bound = search.nextBound;
+        }
+
+        return new Result(best, greedy.nodesExpanded + search.expanded,
+                          greedy.nodesGenerated + search.generated,
+                          System.currentTimeMillis() - start, optimal);
+    }//idaStar
+
+    /**
+     * @see #idaStar(long, int)
+     */
+    public Result idaStar(long budgetMillis) {
+        return idaStar(budgetMillis, DEFAULT_TABLE_BITS);
+    }
+
+    /**
+     * class IdaSearch
+     *
+     * the state of one IDA* search
+     */
+    private final class IdaSearch {
+        //transposition table: the hash of a belief, the shallowest depth it
+        //was seen at and the iteration that was in
+        final long[] keys;
+        final int[] depths;
+        final int[] iterations;
+        final int mask;
+
+        final long deadline;  //System.nanoTime() to give up at
+        boolean timedOut = false;
+        final boolean usePairs;  //is the pair table already built?
+
+        int iteration = 0;
+        int nextBound;  //smallest f that went over the bound this iteration
+        int[] path = new int[16];
+        int pathLength = 0;
+        long expanded = 0;
+        long generated = 0;
+
+        IdaSearch(int tableBits, long deadline, boolean usePairs) {
+            keys = new long[1 << tableBits];
+            depths = new int[1 << tableBits];
+            iterations = new int[1 << tableBits];
+            mask = (1 << tableBits) - 1;
+            this.deadline = deadline;
+            this.usePairs = usePairs;
+        }
+
+        /**
+         * searches below the given (non-empty) belief, reached after g steps,
+         * for an empty one within the bound
+         *
+         * @return true if one was found (its path is in path[0..pathLength))
+         */
+        boolean search(Belief belief, int g, int bound) {
+            //check the clock at every node (expanding one can take a while on
+            //a big machine so checking less often could overshoot a lot)
+            expanded++;
+            if (System.nanoTime() - deadline > 0) {
+                timedOut = true;
+            }
+            if (timedOut) return false;
+
+            if (g == path.length) path = Arrays.copyOf(path, 2 * g);
+            for (int c = 0; c < machine.getAlphabetSize(); ++c) {
+                Belief child = advance(belief, c);
+                generated++;
+                path[g] = c;
+
+                if (child.isEmpty()) {
+                    pathLength = g + 1;
+                    return true;
+                }
+
+                int f = g + 1 + heuristic(child, usePairs);
+                if (f > bound) {
+                    nextBound = Math.min(nextBound, f);
+                    continue;
+                }
+                if (seenNoDeeper(child, g + 1)) continue;
+
+                if (search(child, g + 1, bound)) return true;
+                if (timedOut) return false;
+            }
+            return false;
+        }//search
+
+        /**
+         * @return true if the given belief has already been searched this
+         *         iteration from no deeper than the given depth (in which
+         *         case searching it again can't find anything new).
+         *         Otherwise it's recorded as seen at this depth.
+         */
+        boolean seenNoDeeper(Belief belief, int depth) {
+            long key = belief.hash64();
+            int slot = (int)(key ^ (key >>> 32)) & mask;
+            if (keys[slot] == key && iterations[slot] == iteration && depths[slot] <= depth) {
+                return true;
+            }
+            keys[slot] = key;
+            depths[slot] = depth;
+            iterations[slot] = iteration;
+            return false;
+        }
+    }//class IdaSearch
+
+    /**
+     * Finds a shortest blind path with hash-distributed A* (HDA*) on several
+     * threads.
+     *
+     * Each belief is owned by one worker, picked by hashing the belief.  A
+     * worker keeps its own open list and expands only the nodes it owns,
+     * sending every child to the child's owner.  All workers share one table
+     * of the best path length seen for each belief, so duplicates are
+     * dropped no matter who generates them.
+     *
+     * Because the workers don't expand nodes in a single global order, the
+     * first path found is not necessarily the shortest.  Instead the best
+     * path found so far is kept as an incumbent, nodes that can't beat it are
+     * pruned, and the search ends only when no work is left anywhere: every
+     * node that could lead to a shorter path has then been expanded.  Work
+     * is counted in a single shared counter that goes up before a node is
+     * sent and down after it's been dealt with, so it can only reach zero
+     * once all open lists and inboxes are empty.
+     *
+     * If the calling thread is interrupted the workers are stopped and the
+     * best path found so far (if any) is returned as not known to be the
+     * shortest.  If a worker throws, the others are stopped and the exception
+     * is rethrown here.
+     *
+     * @param numThreads number of worker threads (no more than there are
+     *                   processors; with one the search runs serially)
+     */
+    public Result parallelAStar(int numThreads) {
+        numThreads = Math.min(numThreads, Runtime.getRuntime().availableProcessors());
+        if (numThreads <= 1) return aStar();
+
+        long start = System.currentTimeMillis();
+
+        Belief root = initialBelief();
+        if (root.isEmpty()) {
+            return new Result(new int[0], 0, 1, System.currentTimeMillis() - start);
+        }
+
+        HdaWorker[] workers = new HdaWorker[numThreads];
+        HdaShared shared = new HdaShared(workers);
+        for (int i = 0; i < numThreads; ++i) {
+            workers[i] = new HdaWorker(shared);
+        }
+
+        //seed the search with the root
+        shared.bestG.put(root, 0);
+        shared.pending.set(1);
+        shared.owner(root).inbox.add(new Node(root, null, -1, 0, heuristic(root)));
+
+        Thread[] threads = new Thread[numThreads];
+        int started = 0;
+        boolean interrupted = false;
+        try {
+            for (int i = 0; i < numThreads; ++i) {
+                threads[i] = new Thread(workers[i], "hda-" + i);
+                threads[i].start();
+                started++;
+            }
+        }
+        finally {
+            //wait for every worker that was started.  If we're interrupted
+            //(or couldn't start them all) they're told to stop and whatever
+            //has been found so far is reported (not known to be shortest).
+            if (started < numThreads) shared.stop = true;
+            for (int i = 0; i < started; ++i) {
+                while (threads[i].isAlive()) {
+                    try {
+                        threads[i].join();
+                    }
+                    catch (InterruptedException e) {
+                        shared.stop = true;
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        long expanded = 0;
+        long generated = 1;
+        for (HdaWorker worker : workers) {
+            expanded += worker.expanded;
+            generated += worker.generated;
+        }
+
+        //a worker that died takes the search down with it
+        Throwable failure = shared.failure.get();
+        if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+        if (failure instanceof Error) throw (Error)failure;
+        if (failure != null) throw new IllegalStateException("an HDA* worker failed", failure);
+
+        //the incumbent is only known to be shortest if all the work was done
+        Node best = shared.best.get();
+        int[] path = (best == null) ? null : best.path();
+        return new Result(path, expanded, generated, System.currentTimeMillis() - start,
+                          shared.pending.get() == 0);
+    }//parallelAStar
+
+    /**
+     * class HdaShared
+     *
+     * the state shared by all the workers of a parallel search
+     */
+    private final class HdaShared {
+        final HdaWorker[] workers;
+        final ConcurrentHashMap<Belief, Integer> bestG = new ConcurrentHashMap<Belief, Integer>();
+        final AtomicLong pending = new AtomicLong();  //nodes not yet dealt with
+        final AtomicReference<Node> best = new AtomicReference<Node>();  //incumbent
+        volatile boolean stop = false;  //tells the workers to quit early
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();  //first crash
+
+        HdaShared(HdaWorker[] workers) {
+            this.workers = workers;
+        }
+
+        /** @return the worker responsible for the given belief */
+        HdaWorker owner(Belief belief) {
+            //scramble the hash so that similar beliefs spread out
+            int h = belief.hashCode() * 0x9E3779B9;
+            h ^= h >>> 16;
+            return workers[(h & Integer.MAX_VALUE) % workers.length];
+        }
+
+        /** @return the length of the incumbent path (or MAX_VALUE) */
+        int bestCost() {
+            Node node = best.get();
+            return (node == null) ? Integer.MAX_VALUE : node.g;
+        }
+
+        /** makes the given goal node the incumbent if it's shorter */
+        void offerSolution(Node node) {
+            Node current = best.get();
+            while (current == null || node.g < current.g) {
+                if (best.compareAndSet(current, node)) return;
+                current = best.get();
+            }
+        }
+
+        /**
+         * records that the given belief was reached by a path of length g
+         *
+         * @return true if that is shorter than any path seen before
+         */
+        boolean improve(Belief belief, int g) {
+            Integer seen = bestG.putIfAbsent(belief, g);
+            while (seen != null) {
+                if (seen <= g) return false;
+                if (bestG.replace(belief, seen, g)) return true;
+                seen = bestG.get(belief);
+            }
+            return true;
+        }
+    }//class HdaShared
+
+    /**
+     * class HdaWorker
+     *
+     * one thread of a parallel search
+     */
+    private final class HdaWorker implements Runnable {
+        final HdaShared shared;
+        final ConcurrentLinkedQueue<Node> inbox = new ConcurrentLinkedQueue<Node>();
+        final PriorityQueue<Node> open = new PriorityQueue<Node>(BY_F);
+        final long[] scratch = newScratch();
+        long expanded = 0;
+        long generated = 0;
+
+        HdaWorker(HdaShared shared) {
+            this.shared = shared;
+        }
+
+        public void run() {
+            try {
+                search();
+            }
+            catch (Throwable t) {
+                shared.failure.compareAndSet(null, t);  //rethrown by parallelAStar
+            }
+            finally {
+                //a worker only finishes normally once all the work is done;
+                //if one dies the others must not wait for its nodes forever
+                shared.stop = true;
+            }
+        }
+
+        void search() {
+            while (!shared.stop) {
+                //move everything sent to us onto the open list
+                Node incoming;
+                while ((incoming = inbox.poll()) != null) {
+                    open.add(incoming);
+                }
+
+                Node parent = open.poll();
+                if (parent == null) {
+                    if (shared.pending.get() == 0) return;  //all done
+                    Thread.yield();
+                    continue;
+                }
+
+                //skip nodes that were reached again by a shorter path or
+                //that can't lead to anything better than the incumbent
+                if (parent.g <= shared.bestG.get(parent.belief)
+                    && parent.getF() < shared.bestCost()) {
+                    expand(parent);
+                }
+                shared.pending.decrementAndGet();
+            }
+        }
+
+        void expand(Node parent) {
+            expanded++;
+            for (int c = 0; c < machine.getAlphabetSize(); ++c) {
+                Belief belief = advance(parent.belief, c, scratch);
+                int g = parent.g + 1;
+                generated++;
+
+                if (belief.isEmpty()) {
+                    shared.offerSolution(new Node(belief, parent, c, g, 0));
+                    continue;
+                }
+
+                int h = heuristic(belief);
+                if (g + h >= shared.bestCost()) continue;
+                if (!shared.improve(belief, g)) continue;
+
+                shared.pending.incrementAndGet();
+                shared.owner(belief).inbox.add(new Node(belief, parent, c, g, h));
+            }//for
+        }//expand
+    }//class HdaWorker
+
+}//class BlindPathSearch
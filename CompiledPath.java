@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+/**
+ * <!-- class CompiledPath -->
+ *
+ * A path that has been run through a state machine from every state at once
+ * and boiled down to what it does: where it ends up from each start state and
+ * how many steps it takes to reach the goal from each one.  After that a path
+ * can be evaluated from any (or every) state without replaying it.
+ *
+ * Compiled paths are built and cached by {@link StateMachine#compile}.  They
+ * never change once built.
+ *
+ * @version February 26 2015
+ */
+public class CompiledPath {
+
+    private final int[] actions;   //the path itself
+    private final int[] result;    //state reached from each start state
+    private final int[] goalStep;  //index of the step that first reaches goal (or -1)
+    private final int goalCount;   //how many start states reach the goal
+    private final long stepSum;    //sum of goalStep over those states
+
+    /**
+     * compiles the given path from scratch
+     */
+    CompiledPath(StateMachine machine, int[] actions) {
+        this(machine, identity(machine.getNumStates()), 0, actions);
+    }
+
+    /**
+     * compiles the given path by extending an already compiled prefix of it
+     *
+     * @param prefix a compiled path whose actions start the given ones
+     */
+    CompiledPath(StateMachine machine, CompiledPath prefix, int[] actions) {
+        this(machine, prefix.result.clone(), prefix.actions.length, actions,
+             prefix.goalStep.clone(), prefix.goalCount, prefix.stepSum);
+    }
+
+    private CompiledPath(StateMachine machine, int[] start, int done, int[] actions) {
+        this(machine, start, done, actions, filled(start.length, -1), 0, 0);
+    }
+
+    private CompiledPath(StateMachine machine, int[] states, int done, int[] actions,
+                         int[] goalStep, int goalCount, long stepSum) {
+        final int goal = machine.getGoalState();
+
+        //Take each remaining action from every state at once
+        for (int c = done; c < actions.length; ++c) {
+            final int[] image = machine.image(actions[c]);
+            for (int i = 0; i < states.length; ++i) {
+                states[i] = image[states[i]];
+                if (states[i] == goal && goalStep[i] < 0 && i != goal) {
+                    goalStep[i] = c;
+                    goalCount++;
+                    stepSum += c;
+                }
+            }
+        }
+
+        this.actions = actions;
+        this.result = states;
+        this.goalStep = goalStep;
+        this.goalCount = goalCount;
+        this.stepSum = stepSum;
+    }
+
+    private static int[] identity(int size) {
+        int[] states = new int[size];
+        for (int i = 0; i < size; ++i) {
+            states[i] = i;
+        }
+        return states;
+    }
+
+    private static int[] filled(int size, int value) {
+        int[] array = new int[size];
+        Arrays.fill(array, value);
+        return array;
+    }
+
+    /** @return the number of actions in the path */
+    public int length() {
+        return actions.length;
+    }
+
+    /** @return the state reached by following the whole path from the given one */
+    public int resultFrom(int state) {
+        return result[state];
+    }
+
+    /**
+     * @return the (zero-based) index of the step that first reaches the goal
+     *         from the given state or -1 if the path never gets there
+     */
+    public int goalStepFrom(int state) {
+        return goalStep[state];
+    }
+
+    /** @return how many (non-goal) start states the path reaches the goal from */
+    public int getGoalCount() {
+        return goalCount;
+    }
+
+    /**
+     * @return the average index of the step that reaches the goal, or -1 if
+     *         the path doesn't reach the goal from every state
+     *
+     * @see StateMachine#avgStepsToGoalWithPath(int[])
+     */
+    public int avgStepsToGoal() {
+        if (goalCount != result.length - 1) return -1;
+        if (goalCount == 0) return 0;
+        return (int)(stepSum / goalCount);
+    }
+
+    /**
+     * class Key
+     *
+     * looks up a path (or the first part of one) in a cache without copying it
+     */
+    static final class Key {
+        private final int[] actions;
+        private final int length;
+        private final int hash;
+
+        Key(int[] actions, int length) {
+            this.actions = actions;
+            this.length = length;
+            int h = 1;
+            for (int i = 0; i < length; ++i) {
+                h = 31 * h + actions[i];
+            }
+            this.hash = h;
+        }
+
+        /** @return a key that owns a copy of the actions */
+        Key copy() {
+            return new Key(Arrays.copyOf(actions, length), length);
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) return false;
+            Key that = (Key)other;
+            return hash == that.hash
+                && Arrays.equals(actions, 0, length, that.actions, 0, that.length);
+        }
+    }//class Key
+
+}//class CompiledPath
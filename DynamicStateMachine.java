@@ -0,0 +1,342 @@
+import java.util.Arrays;
+
+/**
+ * <!-- class DynamicStateMachine -->
+ *
+ * A state machine that can be edited while agents explore it: transitions
+ * can be redirected or removed and the goal can be moved.  This lets us see
+ * how agents cope when the world changes underneath them.
+ *
+ * Every edit keeps the shortest paths to the goal up to date.  Rather than
+ * searching the whole machine again, an edit only revisits the states whose
+ * shortest paths it could have changed (dynamic BFS):
+ *
+ *  - A new transition that gives a state a shorter path is pushed backwards
+ *    through the predecessors of that state for as long as it keeps making
+ *    paths shorter.
+ *  - If a transition on some state's shortest path goes away, every state
+ *    whose shortest path ran through it is cut loose.  Each of those states
+ *    gets the best distance it can get through a state that wasn't cut loose
+ *    and these are then relaxed in order of distance (shortest first).
+ *
+ * Moving the goal changes every distance so it redoes the full breadth-first
+ * search.
+ *
+ * A DynamicStateMachine is not thread-safe and, unlike other machines, is
+ * not safe to share between threads just because it has been built: edits
+ * update its arrays in place, so another thread is only sure to see them if
+ * something (a lock, an executor, Thread.join) orders the edit before its
+ * use.  It must not be edited while another thread is using it.
+ *
+ * @version February 26 2015
+ */
+public class DynamicStateMachine extends StateMachine {
+
+    private final int numStates;
+    private final int alphabetSize;
+
+    //predecessors of each state, listed as transition ids
+    //(source * alphabetSize + action) in no particular order
+    private final int[][] preds;
+    private final int[] predCount;
+
+    private int unreachable;  //number of states with no path to the goal
+
+    //scratch space for repairs (marks are compared against the current epoch
+    //so they never need clearing)
+    private final int[] mark;
+    private int epoch = 0;
+    private int[] affected;
+    private long[] queue;
+
+    /**
+     * creates an editable copy of the given machine
+     */
+    public DynamicStateMachine(StateMachine machine) {
+        super(copyTable(machine), copyDistances(machine), copyNextActions(machine));
+        numStates = machine.getNumStates();
+        alphabetSize = machine.getAlphabetSize();
+        goalState = machine.getGoalState();
+
+        //build the predecessor lists
+        predCount = new int[numStates];
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                predCount[next(i, j)]++;
+            }
+        }
+        preds = new int[numStates][];
+        for (int i = 0; i < numStates; ++i) {
+            preds[i] = new int[Math.max(predCount[i], 1)];
+            predCount[i] = 0;
+        }
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                addPred(next(i, j), i * alphabetSize + j);
+            }
+        }
+
+        unreachable = 0;
+        for (int i = 0; i < numStates; ++i) {
+            if (distance[i] == -1) unreachable++;
+        }
+        goalReachable = (unreachable == 0);
+
+        mark = new int[numStates];
+        affected = new int[16];
+        queue = new long[16];
+    }
+
+    /**
+     * A constructor which allows us to hard code state machine transitions
+     * for testing purposes.  The last state is the goal.
+     */
+    public DynamicStateMachine(int[][] transitions, int alphaSize) {
+        this(new StateMachine(transitions, alphaSize));
+    }
+
+    /** @return a writable copy of the given machine's transition table */
+    private static TransitionTable copyTable(StateMachine machine) {
+        TransitionTable table = TransitionTable.allocate(machine.getNumStates(),
+                                                         machine.getAlphabetSize());
+        for (int i = 0; i < machine.getNumStates(); ++i) {
+            for (int j = 0; j < machine.getAlphabetSize(); ++j) {
+                table.set(i, j, machine.next(i, j));
+            }
+        }
+        return table;
+    }
+
+    private static int[] copyDistances(StateMachine machine) {
+        int[] distance = new int[machine.getNumStates()];
+        for (int i = 0; i < distance.length; ++i) {
+            distance[i] = machine.getDistance(i);
+        }
+        return distance;
+    }
+
+    private static int[] copyNextActions(StateMachine machine) {
+        int[] nextAction = new int[machine.getNumStates()];
+        for (int i = 0; i < nextAction.length; ++i) {
+            nextAction[i] = machine.getNextAction(i);
+        }
+        return nextAction;
+    }
+
+    /**
+     * ************************************************************************************
+     * METHODS FOR EDITING THE MACHINE
+     * ************************************************************************************
+     */
+
+    /**
+     * Changes where taking the given action in the given state leads.
+     *
+     * @param state  the state the transition starts from
+     * @param action the action (an index into the alphabet)
+     * @param target the state it should lead to now
+     */
+    public void setTransition(int state, int action, int target) {
+        checkState(state);
+        checkState(target);
+        if (action < 0 || action >= alphabetSize) {
+            throw new IllegalArgumentException("no such action: " + action);
+        }
+
+        int oldTarget = next(state, action);
+        if (oldTarget == target) return;
+
+        int id = state * alphabetSize + action;
+        removePred(oldTarget, id);
+        addPred(target, id);
+        transition.set(state, action, target);
+        invalidateDerived();
+
+        if (state == goalState) return;  //paths end at the goal
+
+        if (nextAction[state] == action) {
+            //the state's shortest path went this way so it and everything
+            //whose shortest path runs through it may have gotten longer
+            repairIncrease(state);
+        }
+        else if (distance[target] != -1
+                 && (distance[state] == -1 || distance[target] + 1 < distance[state])) {
+            //the new transition is a shortcut
+            setDistance(state, distance[target] + 1, action);
+            queue[0] = pack(distance[state], state);
+            propagate(0, 0, 1);
+        }
+        goalReachable = (unreachable == 0);
+    }//setTransition
+
+    /**
+     * Removes the given transition: taking the action in the state will no
+     * longer go anywhere (it becomes a self-loop).
+     */
+    public void removeTransition(int state, int action) {
+        setTransition(state, action, state);
+    }
+
+    /**
+     * Moves the goal to the given state.  This changes the shortest path
+     * from every state so it takes time proportional to the size of the
+     * machine.
+     */
+    public void setGoalState(int state) {
+        checkState(state);
+        if (state == goalState) return;
+
+        goalState = state;
+        invalidateDerived();
+        findShortestPaths();
+
+        unreachable = 0;
+        for (int i = 0; i < numStates; ++i) {
+            if (distance[i] == -1) unreachable++;
+        }
+        goalReachable = (unreachable == 0);
+    }//setGoalState
+
+    private void checkState(int state) {
+        if (state < 0 || state >= numStates) {
+            throw new IllegalArgumentException("no such state: " + state);
+        }
+    }
+
+    /**
+     * ************************************************************************************
+     * METHODS FOR REPAIRING SHORTEST PATHS
+     * ************************************************************************************
+     */
+
+    /**
+     * Repairs the shortest paths after the first step on the given state's
+     * shortest path has changed.
+     */
+    private void repairIncrease(int root) {
+        epoch++;
+
+        //collect every state whose shortest path runs through the root by
+        //following the shortest path tree backwards
+        int size = 0;
+        affected = ensure(affected, 1);
+        affected[size++] = root;
+        mark[root] = epoch;
+        for (int k = 0; k < size; ++k) {
+            int x = affected[k];
+            for (int p = 0; p < predCount[x]; ++p) {
+                int id = preds[x][p];
+                int source = id / alphabetSize;
+                if (mark[source] != epoch && nextAction[source] == id % alphabetSize) {
+                    mark[source] = epoch;
+                    affected = ensure(affected, size + 1);
+                    affected[size++] = source;
+                }
+            }
+        }
+
+        //give each of them the best distance it can get through a state
+        //whose distance is still known to be right
+        queue = ensure(queue, size);
+        int seeds = 0;
+        for (int k = 0; k < size; ++k) {
+            int x = affected[k];
+            int best = -1;
+            int bestAction = -1;
+            for (int j = 0; j < alphabetSize; ++j) {
+                int target = next(x, j);
+                if (mark[target] == epoch || distance[target] == -1) continue;
+                if (best == -1 || distance[target] < best) {
+                    best = distance[target];
+                    bestAction = j;
+                }
+            }
+            int d = (best == -1) ? -1 : best + 1;
+            setDistance(x, d, bestAction);
+            queue[seeds++] = pack(d, x);
+        }
+
+        //relax them shortest first (the ones with no distance sort first and
+        //are dropped)
+        Arrays.sort(queue, 0, seeds);
+        int start = 0;
+        while (start < seeds && (queue[start] >> 32) == -1) start++;
+        propagate(start, seeds, seeds);
+    }//repairIncrease
+
+    /**
+     * Pushes shorter distances backwards through predecessors until nothing
+     * improves.  States are processed in order of distance: the entries
+     * queue[seedStart..seedEnd) are sorted seeds and entries from seedEnd on
+     * are a FIFO of states whose distance improved (which stays sorted since
+     * each is one more than the state it came from).  An entry whose distance
+     * has since improved again is skipped.
+     *
+     * @param tail end of the FIFO (seedEnd if it's empty)
+     */
+    private void propagate(int seedStart, int seedEnd, int tail) {
+        int head = seedEnd;
+        while (seedStart < seedEnd || head < tail) {
+            long entry;
+            if (head == tail || (seedStart < seedEnd && queue[seedStart] <= queue[head])) {
+                entry = queue[seedStart++];
+            }
+            else {
+                entry = queue[head++];
+            }
+            int x = (int)entry;
+            int d = (int)(entry >> 32);
+            if (distance[x] != d) continue;
+
+            for (int p = 0; p < predCount[x]; ++p) {
+                int id = preds[x][p];
+                int source = id / alphabetSize;
+                if (source == goalState) continue;
+                if (distance[source] == -1 || d + 1 < distance[source]) {
+                    setDistance(source, d + 1, id % alphabetSize);
+                    queue = ensure(queue, tail + 1);
+                    queue[tail++] = pack(d + 1, source);
+                }
+            }
+        }
+    }//propagate
+
+    /** sets a state's distance and first step, keeping count of unreachable states */
+    private void setDistance(int state, int d, int action) {
+        if (distance[state] == -1 && d != -1) unreachable--;
+        if (distance[state] != -1 && d == -1) unreachable++;
+        distance[state] = d;
+        nextAction[state] = action;
+    }
+
+    /** packs a distance and a state so they sort by distance */
+    private static long pack(int d, int state) {
+        return ((long)d << 32) | state;
+    }
+
+    private void addPred(int target, int id) {
+        if (predCount[target] == preds[target].length) {
+            preds[target] = Arrays.copyOf(preds[target], 2 * predCount[target]);
+        }
+        preds[target][predCount[target]++] = id;
+    }
+
+    private void removePred(int target, int id) {
+        int[] list = preds[target];
+        for (int p = 0; p < predCount[target]; ++p) {
+            if (list[p] == id) {
+                list[p] = list[--predCount[target]];
+                return;
+            }
+        }
+    }
+
+    private static int[] ensure(int[] array, int size) {
+        return (size <= array.length) ? array : Arrays.copyOf(array, Math.max(size, 2 * array.length));
+    }
+
+    private static long[] ensure(long[] array, int size) {
+        return (size <= array.length) ? array : Arrays.copyOf(array, Math.max(size, 2 * array.length));
+    }
+
+}//class DynamicStateMachine
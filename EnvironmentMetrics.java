@@ -0,0 +1,175 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <!-- class EnvironmentMetrics -->
+ *
+ * Counts what environments do: moves taken, goals reached, restarts, moves
+ * that went nowhere, and how many moves each trip to the goal took.  These
+ * make degenerate machines easy to spot and help size runs.
+ *
+ * Every new StateMachineEnvironment session reports to {@link #global}
+ * unless it's given another instance (or null to not count at all) with
+ * {@link StateMachineEnvironment#setMetrics}.
+ *
+ * Environments count in plain fields of their own and only add them in here
+ * when they reach the goal, every 4096 moves (METRICS_FLUSH_TICKS) if they
+ * don't, whenever they're reset and when asked to with
+ * {@link StateMachineEnvironment#flushMetrics} (agents do at the end of
+ * each run), so a tick costs a few increments whether or not anyone is
+ * looking.  The counters here are striped (LongAdder) so sessions on many
+ * threads can share one instance.
+ *
+ * @version February 26 2015
+ */
+public class EnvironmentMetrics implements EnvironmentMetricsMXBean {
+
+    /** number of buckets in the steps-between-goals histogram */
+    public static final int HISTOGRAM_BUCKETS = 64;
+
+    //the instance environments report to unless told otherwise
+    private static final EnvironmentMetrics GLOBAL = new EnvironmentMetrics();
+
+    private final LongAdder ticks = new LongAdder();
+    private final LongAdder goals = new LongAdder();
+    private final LongAdder resets = new LongAdder();
+    private final LongAdder selfLoops = new LongAdder();
+    private final LongAdder stepsToGoal = new LongAdder();  //sum over all goals
+    private final LongAdder[] histogram = new LongAdder[HISTOGRAM_BUCKETS];
+
+    public EnvironmentMetrics() {
+        for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+            histogram[i] = new LongAdder();
+        }
+    }
+
+    /** @return the metrics every environment reports to by default */
+    public static EnvironmentMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * class Snapshot
+     *
+     * the counters as they were at one moment
+     */
+    public static class Snapshot {
+        public final long ticks;
+        public final long goals;
+        public final long resets;
+        public final long selfLoops;
+        public final long stepsToGoal;  //total moves over all trips to the goal
+        public final long[] histogram;  //bucket b counts trips of [2^b, 2^(b+1)) moves
+
+        Snapshot(long ticks, long goals, long resets, long selfLoops, long stepsToGoal,
+                 long[] histogram) {
+            this.ticks = ticks;
+            this.goals = goals;
+            this.resets = resets;
+            this.selfLoops = selfLoops;
+            this.stepsToGoal = stepsToGoal;
+            this.histogram = histogram;
+        }
+
+        /** @return average number of moves per trip to the goal */
+        public double getMeanStepsBetweenGoals() {
+            return (goals == 0) ? 0.0 : (double)stepsToGoal / goals;
+        }
+
+        public String toString() {
+            return "[Ticks: " + ticks + "| Goals: " + goals + "| Resets: " + resets
+                + "| Self loops: " + selfLoops
+                + "| Mean steps to goal: " + getMeanStepsBetweenGoals() + "]";
+        }
+    }//class Snapshot
+
+    /**
+     * adds counts an environment has been keeping
+     *
+     * @param numTicks     moves taken
+     * @param numSelfLoops moves that left the agent in the same state
+     */
+    void add(long numTicks, long numSelfLoops) {
+        if (numTicks != 0) ticks.add(numTicks);
+        if (numSelfLoops != 0) selfLoops.add(numSelfLoops);
+    }
+
+    /**
+     * records that an environment reached the goal
+     *
+     * @param steps moves taken since the goal was last reached (at least 1)
+     */
+    void recordGoal(long steps) {
+        goals.increment();
+        stepsToGoal.add(steps);
+        histogram[63 - Long.numberOfLeadingZeros(steps)].increment();
+    }
+
+    /** records that an environment restarted in a random state */
+    void recordReset() {
+        resets.increment();
+    }
+
+    /**
+     * @return the current counts.  Counts that environments haven't added yet
+     *         are left out.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(ticks.sum(), goals.sum(), resets.sum(), selfLoops.sum(),
+                            stepsToGoal.sum(), getStepsBetweenGoalsHistogram());
+    }
+
+    public long getTicks() {
+        return ticks.sum();
+    }
+
+    public long getGoals() {
+        return goals.sum();
+    }
+
+    public long getResets() {
+        return resets.sum();
+    }
+
+    public long getSelfLoops() {
+        return selfLoops.sum();
+    }
+
+    public double getMeanStepsBetweenGoals() {
+        return snapshot().getMeanStepsBetweenGoals();
+    }
+
+    public long[] getStepsBetweenGoalsHistogram() {
+        long[] counts = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+            counts[i] = histogram[i].sum();
+        }
+        return counts;
+    }
+
+    public void reset() {
+        ticks.reset();
+        goals.reset();
+        resets.reset();
+        selfLoops.reset();
+        stepsToGoal.reset();
+        for (LongAdder bucket : histogram) {
+            bucket.reset();
+        }
+    }
+
+    /**
+     * publishes these metrics over JMX under the given name
+     *
+     * @return the name they were registered under
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("StateMachine:type=EnvironmentMetrics,name="
+                                               + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+}//class EnvironmentMetrics
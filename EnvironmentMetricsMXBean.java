@@ -0,0 +1,35 @@
+/**
+ * <!-- interface EnvironmentMetricsMXBean -->
+ *
+ * The view of {@link EnvironmentMetrics} published over JMX (e.g., to
+ * watch a sweep from jconsole).
+ *
+ * @version February 26 2015
+ */
+public interface EnvironmentMetricsMXBean {
+
+    /** @return moves taken */
+    long getTicks();
+
+    /** @return times the goal was reached */
+    long getGoals();
+
+    /** @return times a session restarted in a random state */
+    long getResets();
+
+    /** @return moves that left the agent in the same state */
+    long getSelfLoops();
+
+    /** @return average number of moves it took to reach the goal */
+    double getMeanStepsBetweenGoals();
+
+    /**
+     * @return how many times the goal was reached after each number of moves,
+     *         bucketed by powers of two (bucket b counts [2^b, 2^(b+1)) moves)
+     */
+    long[] getStepsBetweenGoalsHistogram();
+
+    /** zeroes every counter */
+    void reset();
+
+}//interface EnvironmentMetricsMXBean
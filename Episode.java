@@ -5,16 +5,20 @@
  */
 public class Episode {
 
-	public char command;     //what the agent did
+	/** the command of an episode whose action is unknown */
+	public static final int NO_COMMAND = -1;
+
+	public int command;      //what the agent did (an index into the alphabet)
 	public int sensorValue;  //what the agent sensed
 
-	public Episode(char cmd, int sensor) {
+	public Episode(int cmd, int sensor) {
 		command = cmd;
 		sensorValue = sensor;
 
 	}
 
     public String toString() {
-        return "[Cmd: "+command+"| Sensor: "+sensorValue+"]";
+        char symbol = (command == NO_COMMAND) ? ' ' : StateMachine.symbolFor(command);
+        return "[Cmd: "+symbol+"| Sensor: "+sensorValue+"]";
     }
 }
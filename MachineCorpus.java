@@ -0,0 +1,241 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * <!-- class MachineCorpus -->
+ *
+ * A file full of pre-generated state machines.  Generating a machine and
+ * finding its shortest paths is done once, when the corpus is written, and
+ * every experiment afterwards just opens the file.  The file is memory-mapped
+ * so the transition tables are read straight out of the page cache and any
+ * number of processes running sweeps share one copy of them.
+ *
+ * File layout (all values big-endian):
+ *
+ *   int   MAGIC
+ *   int   VERSION
+ *   int   number of machines
+ *   long  offset of each machine's record from the start of the file
+ *
+ * followed by one record per machine:
+ *
+ *   int   number of states
+ *   int   alphabet size
+ *   int   goal state (always the last state)
+ *   long  seed the machine was generated from
+ *   int   transition table, row-major ([state * alphabetSize + action])
+ *   int   distance from each state to the goal
+ *   int   first action on each state's shortest path to the goal
+ *
+ * @version February 26 2015
+ */
+public class MachineCorpus {
+
+    public static final int MAGIC = 0x46534D43;  //"FSMC"
+    public static final int VERSION = 1;
+
+    //size in bytes of the fixed parts of the file
+    private static final int HEADER_BYTES = 12;
+    private static final int RECORD_HEADER_BYTES = 20;
+
+    private final ByteBuffer[] records;   //one (mapped) buffer per machine
+    private final StateMachine[] machines;  //machines built so far
+
+    private MachineCorpus(ByteBuffer[] records) {
+        this.records = records;
+        this.machines = new StateMachine[records.length];
+    }
+
+    /**
+     * Generates machines and writes them to a new corpus file.  Machine i is
+     * generated from the i'th seed drawn from the master seed so the same
+     * arguments always give the same corpus.
+     *
+     * @param file         where to write the corpus
+     * @param count        number of machines
+     * @param numStates    number of states in each machine
+     * @param alphabetSize number of actions in each machine
+     * @param masterSeed   seed that all the machines derive from
+     */
+    public static void generate(File file, int count, int numStates, int alphabetSize,
+                                long masterSeed) throws IOException {
+        SplittableRandom seeds = new SplittableRandom(masterSeed);
+        long offset = HEADER_BYTES + 8L * count;
+
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            writeHeader(out, count);
+            for (int i = 0; i < count; ++i) {
+                out.writeLong(offset);
+                offset += recordBytes(numStates, alphabetSize);
+            }
+
+            //only one machine is held in memory at a time
+            for (int i = 0; i < count; ++i) {
+                long seed = seeds.nextLong();
+                StateMachine machine = StateMachine.generate(numStates, alphabetSize,
+                                                             new SplittableRandom(seed));
+                writeRecord(out, machine, seed);
+            }
+        }
+    }//generate
+
+    /**
+     * Writes the given machines to a new corpus file.
+     *
+     * @param seeds the seed each machine was generated from (only recorded)
+     */
+    public static void write(File file, StateMachine[] machines, long[] seeds)
+        throws IOException {
+        long offset = HEADER_BYTES + 8L * machines.length;
+
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            writeHeader(out, machines.length);
+            for (StateMachine machine : machines) {
+                out.writeLong(offset);
+                offset += recordBytes(machine.getNumStates(), machine.getAlphabetSize());
+            }
+            for (int i = 0; i < machines.length; ++i) {
+                writeRecord(out, machines[i], seeds[i]);
+            }
+        }
+    }//write
+
+    private static void writeHeader(DataOutputStream out, int count) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(count);
+    }
+
+    private static long recordBytes(int numStates, int alphabetSize) {
+        return RECORD_HEADER_BYTES + 4L * numStates * (alphabetSize + 2);
+    }
+
+    private static void writeRecord(DataOutputStream out, StateMachine machine, long seed)
+        throws IOException {
+        int numStates = machine.getNumStates();
+        int alphabetSize = machine.getAlphabetSize();
+        if (machine.getGoalState() != numStates - 1) {
+            throw new IllegalArgumentException("corpus machines must have the last state as the goal");
+        }
+
+        out.writeInt(numStates);
+        out.writeInt(alphabetSize);
+        out.writeInt(machine.getGoalState());
+        out.writeLong(seed);
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                out.writeInt(machine.next(i, j));
+            }
+        }
+        for (int i = 0; i < numStates; ++i) {
+            out.writeInt(machine.getDistance(i));
+        }
+        for (int i = 0; i < numStates; ++i) {
+            out.writeInt(machine.getNextAction(i));
+        }
+    }//writeRecord
+
+    /**
+     * Opens a corpus file.  The file is mapped read-only; the mapping stays
+     * valid after this method returns.
+     */
+    public static MachineCorpus open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) throw new IOException(file + " is not a machine corpus");
+
+            //map the whole file at once when it's small enough, otherwise
+            //map each record on its own
+            ByteBuffer whole = null;
+            if (size <= Integer.MAX_VALUE) {
+                whole = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer header = (whole != null) ? whole
+                : channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+
+            if (header.getInt(0) != MAGIC) throw new IOException(file + " is not a machine corpus");
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + " has unsupported version " + header.getInt(4));
+            }
+            int count = header.getInt(8);
+            if (count < 0 || HEADER_BYTES + 8L * count > size) {
+                throw new IOException(file + " is truncated");
+            }
+
+            ByteBuffer offsets = (whole != null) ? whole
+                : channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES + 8L * count);
+            ByteBuffer[] records = new ByteBuffer[count];
+            for (int i = 0; i < count; ++i) {
+                long offset = offsets.getLong(HEADER_BYTES + 8 * i);
+                if (offset < 0 || offset + RECORD_HEADER_BYTES > size) {
+                    throw new IOException(file + " is truncated");
+                }
+
+                //read the record's size from its header
+                ByteBuffer head = (whole != null) ? whole.slice((int)offset, RECORD_HEADER_BYTES)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, offset, RECORD_HEADER_BYTES);
+                int numStates = head.getInt(0);
+                int alphabetSize = head.getInt(4);
+                if (numStates < 1 || alphabetSize < 1 || head.getInt(8) != numStates - 1) {
+                    throw new IOException(file + " has a bad record for machine " + i);
+                }
+                long length = recordBytes(numStates, alphabetSize);
+                if (offset + length > size || length > Integer.MAX_VALUE) {
+                    throw new IOException(file + " has a bad record for machine " + i);
+                }
+
+                records[i] = (whole != null) ? whole.slice((int)offset, (int)length)
+                    : channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+            }
+            return new MachineCorpus(records);
+        }
+    }//open
+
+    /** @return how many machines are in the corpus */
+    public int size() {
+        return records.length;
+    }
+
+    /** @return the seed the given machine was generated from */
+    public long getSeed(int index) {
+        return records[index].getLong(12);
+    }
+
+    /**
+     * Returns the given machine.  Its transition table is read straight from
+     * the mapped file; its distances are copied onto the heap.  Each machine
+     * is only built once so every caller shares the same instance.
+     */
+    public synchronized StateMachine get(int index) {
+        if (machines[index] == null) {
+            ByteBuffer record = records[index];
+            int numStates = record.getInt(0);
+            int alphabetSize = record.getInt(4);
+            int cells = numStates * alphabetSize;
+
+            IntBuffer ints = record.slice(RECORD_HEADER_BYTES,
+                                          record.capacity() - RECORD_HEADER_BYTES)
+                                   .asIntBuffer();
+            TransitionTable table = new TransitionTable.Mapped(numStates, alphabetSize,
+                                                               ints.slice(0, cells));
+            int[] distance = new int[numStates];
+            int[] nextAction = new int[numStates];
+            ints.get(cells, distance);
+            ints.get(cells + numStates, nextAction);
+
+            machines[index] = new StateMachine(table, distance, nextAction);
+        }
+        return machines[index];
+    }//get
+
+}//class MachineCorpus
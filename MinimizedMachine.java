@@ -0,0 +1,273 @@
+import java.util.Arrays;
+
+/**
+ * <!-- class MinimizedMachine -->
+ *
+ * A state machine together with its smallest equivalent machine (its
+ * quotient).  Two states are equivalent if every path reaches the goal from
+ * both of them after the same number of steps (or from neither), so for
+ * finding and scoring blind paths it makes no difference which of them the
+ * agent is in.  Random machines often have a good number of these, and every
+ * per-state loop (and every belief in a blind path search) gets smaller when
+ * each class of equivalent states becomes one state.
+ *
+ * The classes are found with Hopcroft's partition refinement algorithm in
+ * O(A N log N) time, starting from {goal} and {everything else}.  As
+ * everywhere else paths end at the goal, so what the goal's own transitions
+ * do doesn't matter.
+ *
+ * Results found on the quotient map straight back to the original machine:
+ * a blind path for the quotient is a blind path for the original, and
+ * averages over the original's states are averages over the classes
+ * weighted by their size.
+ *
+ * @version February 26 2015
+ */
+public class MinimizedMachine {
+
+    private final StateMachine original;
+    private final StateMachine quotient;
+    private final int[] classOf;    //class (quotient state) of each original state
+    private final int[] classSize;  //number of original states in each class
+
+    /**
+     * minimizes the given machine
+     */
+    public MinimizedMachine(StateMachine machine) {
+        original = machine;
+        int numStates = machine.getNumStates();
+        int alphabetSize = machine.getAlphabetSize();
+        int goal = machine.getGoalState();
+
+        int[] block = refine(machine);
+
+        //number the classes in order of their first state, except that the
+        //goal's class (which only has the goal in it) goes last as usual
+        int[] number = new int[numStates];
+        Arrays.fill(number, -1);
+        int numClasses = 0;
+        classOf = new int[numStates];
+        for (int i = 0; i < numStates; ++i) {
+            if (i == goal) continue;
+            if (number[block[i]] == -1) number[block[i]] = numClasses++;
+            classOf[i] = number[block[i]];
+        }
+        classOf[goal] = numClasses++;
+
+        classSize = new int[numClasses];
+        int[] representative = new int[numClasses];
+        for (int i = numStates - 1; i >= 0; --i) {
+            classSize[classOf[i]]++;
+            representative[classOf[i]] = i;
+        }
+
+        int[][] transitions = new int[numClasses][alphabetSize];
+        for (int c = 0; c < numClasses; ++c) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                transitions[c][j] = classOf[machine.next(representative[c], j)];
+            }
+        }
+        quotient = new StateMachine(transitions, alphabetSize);
+    }//ctor
+
+    /**
+     * Hopcroft's algorithm.
+     *
+     * The states of each block are kept together in one array (block b is
+     * elems[first[b]] up to but not including elems[end[b]]).  To
+     * split the blocks by a splitter, every state with a transition into the
+     * splitter on some action is swapped to the front of its block; blocks
+     * that end up partly marked are cut in two.  Only the smaller half of a
+     * cut block needs to be used as a splitter later (unless the block was
+     * still waiting to be used itself, in which case both halves are).
+     *
+     * @return the block each state ends up in
+     */
+    private static int[] refine(StateMachine machine) {
+        final int numStates = machine.getNumStates();
+        final int alphabetSize = machine.getAlphabetSize();
+        final int goal = machine.getGoalState();
+
+        //predecessors on each action (the goal's transitions all stay put)
+        int[][] predStart = new int[alphabetSize][numStates + 1];
+        int[][] preds = new int[alphabetSize][numStates];
+        for (int a = 0; a < alphabetSize; ++a) {
+            for (int i = 0; i < numStates; ++i) {
+                int target = (i == goal) ? goal : machine.next(i, a);
+                predStart[a][target + 1]++;
+            }
+            for (int i = 0; i < numStates; ++i) {
+                predStart[a][i + 1] += predStart[a][i];
+            }
+            int[] fill = Arrays.copyOf(predStart[a], numStates);
+            for (int i = 0; i < numStates; ++i) {
+                int target = (i == goal) ? goal : machine.next(i, a);
+                preds[a][fill[target]++] = i;
+            }
+        }
+
+        //the initial partition: {goal} and everything else
+        int[] elems = new int[numStates];
+        int[] loc = new int[numStates];   //where each state is in elems
+        int[] blockOf = new int[numStates];
+        int[] first = new int[numStates + 1];
+        int[] end = new int[numStates + 1];
+        int[] marked = new int[numStates + 1];
+        boolean[] waiting = new boolean[numStates + 1];
+        int[] worklist = new int[numStates + 1];
+        int numWaiting = 0;
+
+        int size = 0;
+        for (int i = 0; i < numStates; ++i) {
+            if (i != goal) elems[size++] = i;
+        }
+        elems[size] = goal;
+        int numBlocks = 0;
+        if (size > 0) {
+            first[numBlocks] = 0;
+            end[numBlocks] = size;
+            numBlocks++;
+        }
+        first[numBlocks] = size;
+        end[numBlocks] = numStates;
+        numBlocks++;
+        for (int b = 0; b < numBlocks; ++b) {
+            for (int k = first[b]; k < end[b]; ++k) {
+                blockOf[elems[k]] = b;
+                loc[elems[k]] = k;
+            }
+        }
+
+        //the goal block is enough to start (the other block splits the same way)
+        worklist[numWaiting++] = numBlocks - 1;
+        waiting[numBlocks - 1] = true;
+
+        int[] splitter = new int[numStates];
+        int[] touched = new int[numStates];
+        while (numWaiting > 0) {
+            int s = worklist[--numWaiting];
+            waiting[s] = false;
+
+            //copy the splitter since it may be split itself
+            int splitterSize = end[s] - first[s];
+            System.arraycopy(elems, first[s], splitter, 0, splitterSize);
+
+            for (int a = 0; a < alphabetSize; ++a) {
+                //move every predecessor to the front of its block
+                int numTouched = 0;
+                for (int k = 0; k < splitterSize; ++k) {
+                    int t = splitter[k];
+                    for (int p = predStart[a][t]; p < predStart[a][t + 1]; ++p) {
+                        int state = preds[a][p];
+                        int b = blockOf[state];
+                        int front = first[b] + marked[b];
+                        if (loc[state] < front) continue;  //already marked
+
+                        int other = elems[front];
+                        elems[front] = state;
+                        elems[loc[state]] = other;
+                        loc[other] = loc[state];
+                        loc[state] = front;
+                        if (marked[b]++ == 0) touched[numTouched++] = b;
+                    }
+                }
+
+                //cut each partly marked block in two
+                for (int k = 0; k < numTouched; ++k) {
+                    int b = touched[k];
+                    int cut = first[b] + marked[b];
+                    marked[b] = 0;
+                    if (cut == end[b]) continue;
+
+                    //the marked part becomes the new block
+                    int nb = numBlocks++;
+                    first[nb] = first[b];
+                    end[nb] = cut;
+                    first[b] = cut;
+                    for (int e = first[nb]; e < end[nb]; ++e) {
+                        blockOf[elems[e]] = nb;
+                    }
+
+                    if (waiting[b]) {
+                        worklist[numWaiting++] = nb;
+                        waiting[nb] = true;
+                    }
+                    else {
+                        int smaller = (end[nb] - first[nb] <= end[b] - first[b]) ? nb : b;
+                        worklist[numWaiting++] = smaller;
+                        waiting[smaller] = true;
+                    }
+                }
+            }//for
+        }//while
+
+        return blockOf;
+    }//refine
+
+    /** @return the machine this one was minimized from */
+    public StateMachine getOriginal() {
+        return original;
+    }
+
+    /** @return the minimized machine (each state is a class of original states) */
+    public StateMachine getQuotient() {
+        return quotient;
+    }
+
+    /** @return the class (quotient state) the given original state belongs to */
+    public int classOf(int state) {
+        return classOf[state];
+    }
+
+    /** @return how many original states are in the given class */
+    public int getClassSize(int c) {
+        return classSize[c];
+    }
+
+    public int getNumClasses() {
+        return classSize.length;
+    }
+
+    /**
+     * @return the length of the shortest path from the given original state
+     *         to the goal
+     */
+    public int getDistance(int state) {
+        return quotient.getDistance(classOf[state]);
+    }
+
+    /**
+     * Finds the shortest blind path by searching the quotient, whose beliefs
+     * are smaller.  It's also a shortest blind path for the original.
+     *
+     * @param numThreads how many threads to search with
+     */
+    public int[] shortestBlindPath(int numThreads) {
+        return quotient.shortestBlindPath(numThreads);
+    }
+
+    /**
+     * Calculates the average number of steps the agent will take to reach the
+     * goal from any of the original states with the given path, with the
+     * path only followed from each class once.
+     *
+     * @see StateMachine#avgStepsToGoalWithPath(int[])
+     */
+    public int avgStepsToGoalWithPath(int[] path) {
+        CompiledPath compiled = quotient.compile(path);
+        int goal = quotient.getGoalState();
+
+        long sum = 0;
+        int goalCount = 0;
+        for (int c = 0; c < classSize.length; ++c) {
+            if (c == goal) continue;
+            int step = compiled.goalStepFrom(c);
+            if (step < 0) return -1;  //invalid path
+            sum += (long)step * classSize[c];
+            goalCount += classSize[c];
+        }
+        if (goalCount == 0) return 0;
+        return (int)(sum / goalCount);
+    }//avgStepsToGoalWithPath
+
+}//class MinimizedMachine
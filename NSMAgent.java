@@ -2,7 +2,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
 import java.util.Collections;
 
 /**
@@ -31,7 +30,7 @@ public class NSMAgent extends StateMachineAgent {
         public double qValue = 0.0;
         public double reward = 0.0;
 
-        public QEpisode(char cmd, int sensor) {
+        public QEpisode(int cmd, int sensor) {
             super(cmd, sensor);
         }
     }//class QEpisode
@@ -72,11 +71,11 @@ public class NSMAgent extends StateMachineAgent {
     public class NHood {
         public final int K_NEAREST = 8;  //max allowed size of neighborhood
 
-        public char command;           // action associated with this neighborhood
+        public int command;            // action associated with this neighborhood
         public ArrayList<NBor> nbors;  // neigbhors in the hood
         public int shortest = 0;       //length of shortest neighbor
 
-        public NHood(char initCmd) {
+        public NHood(int initCmd) {
             this.command = initCmd;
             nbors = new ArrayList<NBor>();
         }
@@ -151,8 +150,17 @@ public class NSMAgent extends StateMachineAgent {
 	 * The constructor for the agent simply initializes it's instance variables
 	 */
 	public NSMAgent() {
-        env = new StateMachineEnvironment();
-		alphabet = env.getAlphabet();
+        super();
+        nhoods = new NHood[alphabet.length];
+        episodicMemory.clear();
+	}//NSMAgent ctor
+
+    /**
+     * creates an agent whose every random choice is derived from the given
+     * seed
+     */
+	public NSMAgent(long seed) {
+        super(seed);
         nhoods = new NHood[alphabet.length];
         episodicMemory.clear();
 	}//NSMAgent ctor
@@ -170,10 +178,10 @@ public class NSMAgent extends StateMachineAgent {
         //Create a new neighborhood for each command
         for(int c = 0; c < alphabet.length; ++c)
         {
-            nhoods[c] = new NHood(alphabet[c]);
+            nhoods[c] = new NHood(c);
 
             //temporarily set the to-be-issued command to this value
-            ep.command = alphabet[c];
+            ep.command = c;
 
             //find the kNN
             for(int i = 0; i <= episodicMemory.size() - 2; ++i) {
@@ -262,7 +270,7 @@ public class NSMAgent extends StateMachineAgent {
 
         while (episodicMemory.size() < MAX_EPISODES) {
             //add an episode to represent the current moment
-            char cmd = alphabet[random.nextInt(alphabet.length)];  //default is random for now
+            int cmd = random.nextInt(alphabet.length);  //default is random for now
             QEpisode nowEp = new QEpisode(cmd, prevSensors);
 			episodicMemory.add(nowEp);
 
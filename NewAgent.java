@@ -2,7 +2,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Random;
 import java.util.Collections;
 import java.util.Scanner;
 import java.io.File;
@@ -65,7 +64,7 @@ public class NewAgent extends StateMachineAgent
     int lastGoalIndex;
     int qualityScore = 0;//var to be returned
     int maxQualityScore = 0;
-    char recommendedCharacter = generateSemiRandomAction();
+    int recommendedCharacter = generateSemiRandomAction();
     boolean atGoal = false;
 
     while (episodicMemory.size() < MAX_EPISODES) {
@@ -96,11 +95,12 @@ public class NewAgent extends StateMachineAgent
 
       }
 
-      atGoal = tryPath(stringToPath(Character.toString(recommendedCharacter)));
+      atGoal = tryPath(new Path(new int[] {recommendedCharacter}));
 
 
   }
 
+    env.flushMetrics();
 }
 
 
@@ -133,9 +133,9 @@ protected ArrayList<Episode> generateRandomEpisodes(int length){
 
   for(int i=0; i<length; i++){
     //create a random episode
-    Episode tempEpisode = new Episode('a',0);
+    Episode tempEpisode = new Episode(0,0);
     //tempEpisode.command = generateSemiRandomAction();
-    tempEpisode.command = alphabet[random.nextInt(alphabet.length)];
+    tempEpisode.command = random.nextInt(alphabet.length);
     //System.out.print(tempEpisode.command);
 
     tempEpisode.sensorValue = randomAtGoal(50);
@@ -154,7 +154,7 @@ public void save(ArrayList<Episode> output) {
   try {
     PrintWriter pw = new PrintWriter(new FileOutputStream(OUTPUT_FILE2));
     for (Episode episode : output)
-    pw.println(episode.command);
+    pw.println(getChar(episode));
     pw.close();
   }
   catch (IOException e) {
@@ -166,7 +166,7 @@ public void save(ArrayList<Episode> output) {
 
 //randomly gives an "at goal?" value of 0 or 1
 public int randomAtGoal(int probability){
-  int atGoal = (int)(Math.random()*probability);
+  int atGoal = (int)(random.nextDouble()*probability);
   if(atGoal == 0){
     return 1; //say it reeached the goal
   }
@@ -175,8 +175,10 @@ public int randomAtGoal(int probability){
   }
 }
 
+//the primed first episode has no command and shows as a blank (like Episode.toString)
 public char getChar(Episode epi){
-  return epi.command;
+  if (epi.command == Episode.NO_COMMAND) return ' ';
+  return alphabet[epi.command];
 }
 /*
 * creates a positional weight matrix based on originalEpisodes
@@ -186,9 +188,9 @@ public char getChar(Episode epi){
 */
 protected double getAlignedMatchesScore(Episode[] originalEpisodes, Episode[] foundEpisodes)
 {
-  //convert Episode arrays into char arrays
-  char[] originalChars = new char[COMPARE_SIZE];
-  char[] foundChars = new char[COMPARE_SIZE];
+  //convert Episode arrays into action arrays
+  int[] originalChars = new int[COMPARE_SIZE];
+  int[] foundChars = new int[COMPARE_SIZE];
 
   for (int i = 0; i<COMPARE_SIZE; i++)
   {
@@ -203,7 +205,7 @@ protected double getAlignedMatchesScore(Episode[] originalEpisodes, Episode[] fo
     if(originalChars[i] == (foundChars[i]))
     {
       numAlignedChars++;
-      System.out.println("direct matching char: "+i + " "+ originalChars[i]);
+      System.out.println("direct matching char: "+i + " "+ alphabet[originalChars[i]]);
     }
   }
 
@@ -287,8 +289,8 @@ protected double getCountingScore(Episode[] original, Episode[] found){
 
   for (int i = 0; i<COMPARE_SIZE; i++)
   {
-    originalChars[i] = original[i].command;
-    foundChars[i] = found[i].command;
+    originalChars[i] = getChar(original[i]);
+    foundChars[i] = getChar(found[i]);
   }
 
   String originalString = new String (originalChars); //make arrays into string to get subsequences
@@ -353,8 +355,8 @@ private void checkConditions(int lastGoalIndex){
   while (lastGoalIndex == -1) {
     System.out.println("we are checking conditions");
   //since qualityScore has been init to 0, the ending score will be poor
-  char randomChar  = generateSemiRandomAction();
-  tryPath(stringToPath(Character.toString(randomChar)));
+  int randomChar  = generateSemiRandomAction();
+  tryPath(new Path(new int[] {randomChar}));
   atGoal = episodicMemory.get(episodicMemory.size()-1).sensorValue;
   if(atGoal == 1){
     break;
@@ -366,8 +368,8 @@ private void checkConditions(int lastGoalIndex){
 //If we've just reached the goal in the last 8 characters, then generate random steps until long enough
     while (lastGoalIndex > episodicMemory.size() - COMPARE_SIZE || episodicMemory.size() < COMPARE_SIZE || lastGoalIndex < COMPARE_SIZE){
       System.out.println("In the second while loop");
-    char randomAction = generateSemiRandomAction();
-    tryPath(stringToPath(Character.toString(randomAction)));
+    int randomAction = generateSemiRandomAction();
+    tryPath(new Path(new int[] {randomAction}));
     lastGoalIndex = findLastGoal(episodicMemory.size()-1);
   }
 }
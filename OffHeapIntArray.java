@@ -0,0 +1,105 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <!-- class OffHeapIntArray -->
+ *
+ * An array of ints that lives outside the Java heap, either in direct
+ * memory or in a memory-mapped file.  The garbage collector never has to
+ * look at it and it is indexed with longs, so it can hold more than the
+ * 2^31 - 1 elements a Java array can.
+ *
+ * A single buffer can't be bigger than 2GB so the array is split into
+ * chunks of CHUNK_SIZE ints.  Direct arrays count against the JVM's
+ * -XX:MaxDirectMemorySize limit.  Mapped arrays store the ints big-endian
+ * (the same as {@link MachineCorpus}).
+ *
+ * Different threads may read and write different elements at the same time.
+ *
+ * @version February 26 2015
+ */
+public final class OffHeapIntArray {
+
+    //each chunk holds 2^CHUNK_SHIFT ints (512MB)
+    private static final int CHUNK_SHIFT = 27;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final IntBuffer[] chunks;
+    private final long length;
+
+    private OffHeapIntArray(IntBuffer[] chunks, long length) {
+        this.chunks = chunks;
+        this.length = length;
+    }
+
+    /**
+     * allocates a new array of the given length in direct memory (its
+     * contents start out as zeros)
+     */
+    public static OffHeapIntArray allocate(long length) {
+        IntBuffer[] chunks = new IntBuffer[numChunks(length)];
+        for (int c = 0; c < chunks.length; ++c) {
+            chunks[c] = ByteBuffer.allocateDirect(4 * chunkLength(length, c))
+                                  .order(ByteOrder.nativeOrder())
+                                  .asIntBuffer();
+        }
+        return new OffHeapIntArray(chunks, length);
+    }//allocate
+
+    /**
+     * Maps the given file as an array of the given length.  The file is
+     * created (or grown) if it's too short, in which case the new elements
+     * are zeros.  The mapping stays valid after this method returns and
+     * changes to the array are written back to the file.
+     */
+    public static OffHeapIntArray map(File file, long length) throws IOException {
+        IntBuffer[] chunks = new IntBuffer[numChunks(length)];
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE,
+                                                    StandardOpenOption.CREATE)) {
+            for (int c = 0; c < chunks.length; ++c) {
+                chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, 4L * CHUNK_SIZE * c,
+                                        4L * chunkLength(length, c))
+                                   .asIntBuffer();
+            }
+        }
+        return new OffHeapIntArray(chunks, length);
+    }//map
+
+    private static int numChunks(long length) {
+        if (length < 0) throw new IllegalArgumentException("negative length: " + length);
+        return (int)((length + CHUNK_MASK) >>> CHUNK_SHIFT);
+    }
+
+    private static int chunkLength(long length, int chunk) {
+        return (int)Math.min(CHUNK_SIZE, length - ((long)chunk << CHUNK_SHIFT));
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public int get(long index) {
+        return chunks[(int)(index >>> CHUNK_SHIFT)].get((int)(index & CHUNK_MASK));
+    }
+
+    public void set(long index, int value) {
+        chunks[(int)(index >>> CHUNK_SHIFT)].put((int)(index & CHUNK_MASK), value);
+    }
+
+    /** sets every element to the given value */
+    public void fill(int value) {
+        for (IntBuffer chunk : chunks) {
+            for (int i = chunk.capacity() - 1; i >= 0; --i) {
+                chunk.put(i, value);
+            }
+        }
+    }//fill
+
+}//class OffHeapIntArray
@@ -0,0 +1,475 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * <!-- class OffHeapStateMachine -->
+ *
+ * A state machine with hundreds of millions of states.  Its transition table
+ * and shortest paths are kept outside the Java heap (@see OffHeapIntArray),
+ * so they cost the garbage collector nothing and aren't limited to 2^31 - 1
+ * elements.  The table can also be backed by a file so a huge machine is
+ * generated once and then just mapped by later runs.  Its shortest paths are
+ * then kept in two files next to it (the table's name followed by
+ * DISTANCE_SUFFIX and NEXT_ACTION_SUFFIX) so they're only found once too.
+ *
+ * Environments tick over it and paths run on it exactly as on any other
+ * machine.  The shortest paths are found without predecessor lists, which
+ * would take as much memory again as the table: each level of the
+ * breadth-first search scans the states that don't have a distance yet for
+ * one with a transition to the level before (in parallel).  This takes one
+ * pass over the machine per level; random machines are only a few dozen
+ * levels deep.  The distances are the same as the usual search finds, though
+ * where a state has several shortest paths the first step may differ.
+ *
+ * @version February 26 2015
+ */
+public class OffHeapStateMachine extends StateMachine {
+
+    //how many states each parallel task scans per level
+    private static final int SWEEP_BLOCK_SIZE = 1 << 16;
+
+    //at most 1/CUT_FRACTION of the states are connected to the goal on the heap
+    private static final int CUT_FRACTION = 16;
+
+    //the files that hold the shortest paths of a file-backed machine.  The
+    //distance file has two more ints after the distances: whether every
+    //state can reach the goal and then PATHS_STORED, which is only written
+    //once all the paths have been found.
+    public static final String DISTANCE_SUFFIX = ".distance";
+    public static final String NEXT_ACTION_SUFFIX = ".next";
+    private static final int PATHS_STORED = 0x46534D50;  //"FSMP"
+
+    //length of the shortest path from each state to goal and its first step
+    private final OffHeapIntArray offHeapDistance;
+    private final OffHeapIntArray offHeapNextAction;
+
+    /**
+     * builds a machine around the given (off-heap) transition table and finds
+     * its shortest paths.  The last state is the goal.
+     */
+    OffHeapStateMachine(TransitionTable table) {
+        this(table, OffHeapIntArray.allocate(table.getNumStates()),
+             OffHeapIntArray.allocate(table.getNumStates()), false);
+    }
+
+    /**
+     * @param stored whether the arrays already hold the shortest paths (in
+     *               which case they aren't found again)
+     */
+    private OffHeapStateMachine(TransitionTable table, OffHeapIntArray distance,
+                                OffHeapIntArray nextAction, boolean stored) {
+        super(table, null, null);
+        offHeapDistance = distance;
+        offHeapNextAction = nextAction;
+
+        int numStates = table.getNumStates();
+        if (stored) {
+            goalReachable = (distance.get(numStates) != 0);
+        }
+        else {
+            goalReachable = findShortestPaths();
+            if (distance.length() > numStates) {
+                distance.set(numStates, goalReachable ? 1 : 0);
+                distance.set(numStates + 1L, PATHS_STORED);
+            }
+        }
+    }
+
+    /**
+     * generates a random machine in direct memory
+     *
+     * @see StateMachine#generate
+     */
+    public static OffHeapStateMachine generate(int numStates, int alphabetSize,
+                                               SplittableRandom random) {
+        return generate(TransitionTable.allocateOffHeap(numStates, alphabetSize),
+                        OffHeapIntArray.allocate(numStates), OffHeapIntArray.allocate(numStates),
+                        random);
+    }
+
+    /**
+     * generates a random machine whose transition table (and shortest paths)
+     * are stored in the given file (and the ones next to it) (@see #open)
+     *
+     * @see StateMachine#generate
+     */
+    public static OffHeapStateMachine generate(int numStates, int alphabetSize,
+                                               SplittableRandom random, File file)
+        throws IOException {
+        //any paths stored for an earlier machine are out of date
+        Files.deleteIfExists(new File(file.getPath() + DISTANCE_SUFFIX).toPath());
+        Files.deleteIfExists(new File(file.getPath() + NEXT_ACTION_SUFFIX).toPath());
+        return generate(TransitionTable.mapOffHeap(file, numStates, alphabetSize),
+                        mapDistance(file, numStates), mapNextAction(file, numStates), random);
+    }
+
+    private static OffHeapStateMachine generate(TransitionTable table, OffHeapIntArray distance,
+                                                OffHeapIntArray nextAction,
+                                                SplittableRandom random) {
+        fillRandom(table, random);
+
+        //the distance array is scratch space for connecting the goal first
+        connectToGoal(table, distance, random);
+        return new OffHeapStateMachine(table, distance, nextAction, false);
+    }//generate
+
+    /**
+     * Opens a machine whose transition table was stored in the given file by
+     * {@link #generate(int, int, SplittableRandom, File)}.  Its shortest
+     * paths are read from the files next to it; if they aren't all there
+     * (e.g., the run that was finding them was killed) they're found again
+     * and stored.
+     */
+    public static OffHeapStateMachine open(File file, int numStates, int alphabetSize)
+        throws IOException {
+        if (file.length() != 4L * numStates * alphabetSize) {
+            throw new IOException(file + " doesn't hold a " + numStates + " x "
+                                  + alphabetSize + " transition table");
+        }
+
+        //files of the wrong size belong to some other machine
+        File distanceFile = new File(file.getPath() + DISTANCE_SUFFIX);
+        File nextActionFile = new File(file.getPath() + NEXT_ACTION_SUFFIX);
+        if (distanceFile.length() != 4L * (numStates + 2L)
+            || nextActionFile.length() != 4L * numStates) {
+            Files.deleteIfExists(distanceFile.toPath());
+            Files.deleteIfExists(nextActionFile.toPath());
+        }
+
+        OffHeapIntArray distance = mapDistance(file, numStates);
+        boolean stored = (distance.get(numStates + 1L) == PATHS_STORED);
+        return new OffHeapStateMachine(TransitionTable.mapOffHeap(file, numStates, alphabetSize),
+                                       distance, mapNextAction(file, numStates), stored);
+    }//open
+
+    /** maps the distances of the machine stored in the given file (and the trailer) */
+    private static OffHeapIntArray mapDistance(File file, int numStates) throws IOException {
+        return OffHeapIntArray.map(new File(file.getPath() + DISTANCE_SUFFIX), numStates + 2L);
+    }
+
+    /** maps the first steps of the machine stored in the given file */
+    private static OffHeapIntArray mapNextAction(File file, int numStates) throws IOException {
+        return OffHeapIntArray.map(new File(file.getPath() + NEXT_ACTION_SUFFIX), numStates);
+    }
+
+    /**
+     * @return an off-heap copy of the given machine
+     */
+    public static OffHeapStateMachine copyOf(StateMachine machine) {
+        int numStates = machine.getNumStates();
+        int alphabetSize = machine.getAlphabetSize();
+        if (machine.getGoalState() != numStates - 1) {
+            throw new IllegalArgumentException("the last state must be the goal");
+        }
+        TransitionTable table = TransitionTable.allocateOffHeap(numStates, alphabetSize);
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                table.set(i, j, machine.next(i, j));
+            }
+        }
+        return new OffHeapStateMachine(table);
+    }//copyOf
+
+    /**
+     * ************************************************************************************
+     * METHODS THAT WOULD COPY THE MACHINE ONTO THE HEAP
+     * ************************************************************************************
+     */
+
+    /**
+     * The image maps, compiled paths and copies of the table all take
+     * (alphabet size x number of states) ints on the heap, which is what this
+     * machine exists to avoid, so they're refused.  Blind path searches need
+     * the image maps and can't run on it either.
+     */
+    @Override
+    int[] image(int action) {
+        throw new UnsupportedOperationException("an off-heap machine has no image maps"
+                                                + " (use next instead)");
+    }
+
+    @Override
+    public CompiledPath compile(int[] path) {
+        throw new UnsupportedOperationException("an off-heap machine can't compile paths"
+                                                + " (use pathResult or avgStepsToGoalWithPath)");
+    }
+
+    @Override
+    public int[][] getTransition() {
+        throw new UnsupportedOperationException("an off-heap machine can't copy its table"
+                                                + " onto the heap (use next instead)");
+    }
+
+    @Override
+    public String[] getPaths() {
+        throw new UnsupportedOperationException("an off-heap machine can't list every path"
+                                                + " (use pathFrom instead)");
+    }
+
+    /**
+     * Follows the path from each state in turn instead of compiling it, so
+     * nothing the size of the machine is allocated.  Blocks of states are
+     * followed in parallel.
+     *
+     * @see StateMachine#avgStepsToGoalWithPath(int[])
+     */
+    @Override
+    public int avgStepsToGoalWithPath(final int[] path) {
+        final int numStates = getNumStates();
+        final int goal = goalState;
+        long stepSum = blocks(numStates).mapToLong(b -> {
+            long sum = 0;
+            int end = (int)Math.min(numStates, (long)(b + 1) * SWEEP_BLOCK_SIZE);
+            for (int i = b * SWEEP_BLOCK_SIZE; i < end; i++) {
+                if (i == goal) continue;
+
+                int state = i;
+                int step = 0;
+                while (step < path.length && (state = next(state, path[step])) != goal) {
+                    step++;
+                }
+                if (step == path.length) return -1;  //never reached the goal
+                sum += step;
+            }
+            return sum;
+        }).reduce(0, (x, y) -> (x < 0 || y < 0) ? -1 : x + y);
+
+        if (stepSum < 0) return -1;
+        return (numStates == 1) ? 0 : (int)(stepSum / (numStates - 1));
+    }//avgStepsToGoalWithPath
+
+    /**
+     * ************************************************************************************
+     * METHODS FOR SHORTEST PATHS
+     * ************************************************************************************
+     */
+
+    @Override
+    public int getDistance(int state) {
+        return offHeapDistance.get(state);
+    }
+
+    @Override
+    public int getNextAction(int state) {
+        return offHeapNextAction.get(state);
+    }
+
+    /**
+     * finds the shortest path to the goal from every state one level at a
+     * time (@see #search)
+     *
+     * @return true if every state has a path to the goal
+     */
+    @Override
+    boolean findShortestPaths() {
+        return search(transition, goalState, offHeapDistance, offHeapNextAction) == getNumStates();
+    }//findShortestPaths
+
+    /**
+     * A breadth-first search backwards from the goal that needs no
+     * predecessor lists.  Each level sweeps the states that don't have a
+     * distance yet and gives the level to those with a transition to a state
+     * reached on an earlier level.  Whether a state was reached earlier is
+     * kept in a bitmap (one bit per state) so the random lookups mostly hit
+     * the cache rather than the distance array.  The states reached on each
+     * level go into a second bitmap that is merged in after the level.
+     *
+     * @param distance   receives the distances (-1 if there's no path)
+     * @param nextAction receives the first steps (may be null)
+     * @return how many states have a path to the goal
+     */
+    private static long search(TransitionTable table, int goal, OffHeapIntArray distance,
+                               OffHeapIntArray nextAction) {
+        int numStates = table.getNumStates();
+        distance.fill(-1);
+        if (nextAction != null) nextAction.fill(-1);
+        distance.set(goal, 0);
+
+        long[] earlier = new long[(int)(((long)numStates + 63) >>> 6)];
+        long[] current = new long[earlier.length];
+        earlier[goal >>> 6] |= 1L << goal;
+
+        long reached = 1;
+        for (int level = 1; ; ++level) {
+            long found = sweep(table, earlier, current, distance, nextAction, level);
+            if (found == 0) return reached;
+            reached += found;
+            for (int w = 0; w < earlier.length; ++w) {
+                earlier[w] |= current[w];
+                current[w] = 0;
+            }
+        }
+    }//search
+
+    /**
+     * Gives each state not in the earlier bitmap that has a transition to a
+     * state in it the given level as its distance (and that transition as
+     * its first step) and adds it to the current bitmap.  Blocks of states
+     * are scanned in parallel; each block is a whole number of words so the
+     * tasks never write the same one.
+     *
+     * @return how many states were reached
+     */
+    private static long sweep(final TransitionTable table, final long[] earlier,
+                              final long[] current, final OffHeapIntArray distance,
+                              final OffHeapIntArray nextAction, final int level) {
+        final int numStates = table.getNumStates();
+        final int alphabetSize = table.getAlphabetSize();
+        return blocks(numStates).mapToLong(b -> {
+            long found = 0;
+            int end = (int)Math.min(numStates, (long)(b + 1) * SWEEP_BLOCK_SIZE);
+            for (int i = b * SWEEP_BLOCK_SIZE; i < end; i++) {
+                if ((earlier[i >>> 6] & (1L << i)) != 0) continue;
+
+                for (int j = 0; j < alphabetSize; j++) {
+                    int target = table.next(i, j);
+                    if ((earlier[target >>> 6] & (1L << target)) != 0) {
+                        distance.set(i, level);
+                        if (nextAction != null) nextAction.set(i, j);
+                        current[i >>> 6] |= 1L << i;
+                        found++;
+                        break;
+                    }
+                }
+            }
+            return found;
+        }).sum();
+    }//sweep
+
+    /** @return the indexes of the blocks of states the sweeps split the work into */
+    private static IntStream blocks(int numStates) {
+        int numBlocks = (int)(((long)numStates + SWEEP_BLOCK_SIZE - 1) / SWEEP_BLOCK_SIZE);
+        IntStream blocks = IntStream.range(0, numBlocks);
+        return (numBlocks > 1) ? blocks.parallel() : blocks;
+    }
+
+    /**
+     * Makes sure every state of a freshly generated table has a path to the
+     * goal, like {@link StateMachine#generate} does: the first state that is
+     * still cut off gets one of its transitions redirected to a state that
+     * can reach the goal, everything that can reach it is reached too, and
+     * so on.  While many states are cut off (e.g., when nothing leads to the
+     * goal yet) the repairs are made in batches, each followed by another
+     * off-heap search.  Once only a few are left (CUT_FRACTION of the
+     * machine) the rest are handled on the heap by searching backwards
+     * through their predecessor lists.
+     * Only which states are reached matters here; the distances are found
+     * again afterwards.
+     *
+     * @param reached scratch space
+     */
+    private static void connectToGoal(TransitionTable table, OffHeapIntArray reached,
+                                      SplittableRandom random) {
+        int numStates = table.getNumStates();
+        int alphabetSize = table.getAlphabetSize();
+        int goal = numStates - 1;
+
+        //each pass repairs twice as many states as the one before so there
+        //are only logarithmically many searches (at the cost of repairing a
+        //few states that an earlier repair in the same batch already reached)
+        int numCut;
+        int first = 0;
+        for (int batch = 1; ; batch = (int)Math.min(numStates, 2L * batch)) {
+            numCut = (int)(numStates - search(table, goal, reached, null));
+            if (numCut <= numStates / CUT_FRACTION) break;
+
+            for (int k = 0; k < batch && k < numCut; k++) {
+                while (reached.get(first) != -1) {
+                    first++;
+                }
+                redirect(table, first, reached, random);
+                first++;
+            }
+        }
+        if (numCut == 0) return;
+
+        //number the cut-off states (state cut[k] is marked -2 - k)
+        int[] cut = new int[numCut];
+        numCut = 0;
+        for (int i = 0; i < numStates; i++) {
+            if (reached.get(i) == -1) {
+                reached.set(i, -2 - numCut);
+                cut[numCut++] = i;
+            }
+        }
+
+        //predecessor lists among the cut-off states (in increasing order)
+        int[] predStart = new int[numCut + 1];
+        for (int k = 0; k < numCut; k++) {
+            for (int j = 0; j < alphabetSize; j++) {
+                int target = table.next(cut[k], j);
+                if (target != cut[k] && reached.get(target) < -1) {
+                    predStart[-1 - reached.get(target)]++;
+                }
+            }
+        }
+        for (int k = 0; k < numCut; k++) {
+            predStart[k + 1] += predStart[k];
+        }
+        int[] preds = new int[predStart[numCut]];
+        int[] fill = new int[numCut];
+        for (int k = 0; k < numCut; k++) {
+            for (int j = 0; j < alphabetSize; j++) {
+                int target = table.next(cut[k], j);
+                if (target != cut[k] && reached.get(target) < -1) {
+                    int t = -2 - reached.get(target);
+                    preds[predStart[t] + fill[t]++] = k;
+                }
+            }
+        }
+
+        int[] queue = new int[numCut];
+        int head = 0;
+        int tail = 0;
+        for (int k = 0; ; k++) {
+            //reach every cut-off state that can reach what has been queued
+            while (head < tail) {
+                int t = queue[head++];
+                for (int p = predStart[t]; p < predStart[t + 1]; p++) {
+                    int source = cut[preds[p]];
+                    if (reached.get(source) < 0) {
+                        reached.set(source, 0);
+                        queue[tail++] = preds[p];
+                    }
+                }
+            }
+            if (tail == numCut) break;
+
+            //find the next state that is still cut off from the goal
+            while (reached.get(cut[k]) >= 0) {
+                k++;
+            }
+            redirect(table, cut[k], reached, random);
+            reached.set(cut[k], 0);
+            queue[tail++] = k;
+        }
+    }//connectToGoal
+
+    /**
+     * Picks one of the given state's transitions to another state at random
+     * (each row has at least one) and points it at a random state that can
+     * reach the goal instead.  Most states can; if a few tries miss, it
+     * points at the goal.
+     *
+     * @param reached is negative for the states that can't reach the goal
+     */
+    private static void redirect(TransitionTable table, int state, OffHeapIntArray reached,
+                                 SplittableRandom random) {
+        int numStates = table.getNumStates();
+        int charToTransition;
+        do {
+            charToTransition = random.nextInt(table.getAlphabetSize());
+        } while (table.next(state, charToTransition) == state);
+
+        int target = random.nextInt(numStates);
+        for (int tries = 1; reached.get(target) < 0 && tries < 64; tries++) {
+            target = random.nextInt(numStates);
+        }
+        if (reached.get(target) < 0) target = numStates - 1;
+        table.set(state, charToTransition, target);
+    }//redirect
+
+}//class OffHeapStateMachine
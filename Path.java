@@ -1,56 +1,64 @@
-
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * Used by the state machine agent to store a sequence of steps in the state
  * machine environment.  This is primarily used to store the best known path
- * from the init state to the goal state.
+ * from the init state to the goal state.  Each step is an action (an index
+ * into the environment's alphabet).
  */
 
 public class Path {
     //list of steps taken along the path
-	private ArrayList<Character> path;
+	private int[] path;
+	private int size;
 
 	//Debugging Variable
 	private boolean debug = true;
 
 	/**
-	 * initializes a path with an array of character
+	 * initializes a path with an array of actions
      *
 	 * @param generated
 	 */
-	public Path (ArrayList<Character> generated) {
-		path = new ArrayList<Character>();
-		for (int i = 0; i < generated.size(); i++) {
-			path.add(generated.get(i));
-		}
+	public Path (int[] generated) {
+		path = Arrays.copyOf(generated, Math.max(generated.length, 1));
+		size = generated.length;
+	}
+
+	/**
+	 * initializes an empty path
+	 */
+	public Path () {
+		this(new int[0]);
 	}
 
     /**
      * creates a copy of this object
      */
 	public Path copy() {
-		ArrayList<Character> createdCopy = new ArrayList<Character>();
-		for (int i = 0; i < path.size(); i++) {
-			createdCopy.add(path.get(i));
-		}
-		return new Path(createdCopy);
+		return new Path(toArray());
 	}
 
 	public int size() {
-		return path.size();
+		return size;
 	}
 
-	public char get(int index) {
-		return path.get(index);
+	public int get(int index) {
+		if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		return path[index];
+	}
+
+	/** @return a copy of the steps in this path */
+	public int[] toArray() {
+		return Arrays.copyOf(path, size);
 	}
 
 	public String toString() {
-		String result = "";
-		for (int i = 0; i < path.size(); i++) {
-			result += path.get(i);
+		StringBuilder result = new StringBuilder(size);
+		for (int i = 0; i < size; i++) {
+			result.append(StateMachine.symbolFor(path[i]));
 		}
-		return result;
+		return result.toString();
 	}
 
 	public void printpath() {
@@ -60,10 +68,33 @@ public class Path {
 	}
 
 	public void remove(int index) {
-		path.remove(index);
+		if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		System.arraycopy(path, index + 1, path, index, size - index - 1);
+		size--;
+	}
+
+	public void add(int index, int toAdd) {
+		if (index > size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+		if (size == path.length) {
+			path = Arrays.copyOf(path, path.length * 2);
+		}
+		System.arraycopy(path, index, path, index + 1, size - index);
+		path[index] = toAdd;
+		size++;
 	}
 
-	public void add(int index, char toAdd) {
-		path.add(index, toAdd);
+	/** two paths are equal if they contain the same steps */
+	public boolean equals(Object other) {
+		if (!(other instanceof Path)) return false;
+		Path that = (Path)other;
+		return Arrays.equals(path, 0, size, that.path, 0, that.size);
+	}
+
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++) {
+			hash = 31 * hash + path[i];
+		}
+		return hash;
 	}
 }
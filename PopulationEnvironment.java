@@ -0,0 +1,94 @@
+import java.util.SplittableRandom;
+
+/**
+ * <!-- class PopulationEnvironment -->
+ *
+ * Steps many independent agents ("lanes") through the same state machine at
+ * once.  Each lane behaves exactly like its own {@link StateMachineEnvironment}
+ * (same sensors, same reset to a random non-goal state after reaching the
+ * goal) but all the lanes' current states are kept in a single array and a
+ * whole tick is one pass over it.
+ *
+ * @version February 26 2015
+ */
+public class PopulationEnvironment {
+
+	private final StateMachine machine;  //shared, read-only
+	private final int[] currentStates;   //current state of each lane
+
+	//used to pick the state a lane restarts in after reaching the goal
+	private final SplittableRandom random;
+
+	/**
+	 * creates a population with every lane in state 0
+	 *
+	 * @param machine  the machine all lanes explore
+	 * @param numLanes how many lanes there are
+	 */
+	public PopulationEnvironment(StateMachine machine, int numLanes) {
+		this(machine, numLanes, new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * creates a population with every lane in state 0 whose resets are
+	 * driven by the given seed
+	 */
+	public PopulationEnvironment(StateMachine machine, int numLanes, long seed) {
+		this.machine = machine;
+		currentStates = new int[numLanes];
+		random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * Takes one move in every lane.
+	 *
+	 * @param actions    the move for each lane (an index into the alphabet)
+	 * @param sensorsOut receives each lane's encoded sensor value
+	 *                   (StateMachineEnvironment.NO_TRANSITION, TRANSITION_ONLY
+	 *                   or GOAL)
+	 * @throws IllegalArgumentException if any lane's move isn't in the
+	 *         alphabet (no lane moves then)
+	 */
+	public void tick(int[] actions, int[] sensorsOut) {
+		final int goal = machine.getGoalState();
+		final int[] states = currentStates;
+
+		for (int lane = 0; lane < states.length; lane++) {
+			StateMachineEnvironment.checkAction(actions[lane], machine.getAlphabetSize());
+		}
+		for (int lane = 0; lane < states.length; lane++) {
+			int state = states[lane];
+			int newState = machine.next(state, actions[lane]);
+			int sensed = StateMachineEnvironment.NO_TRANSITION;
+
+			if (newState != state) {
+				sensed = StateMachineEnvironment.TRANSITION_ONLY;
+			}
+
+			//reaching the goal resets the lane to a random non-goal state
+			if (newState == goal) {
+				sensed = StateMachineEnvironment.GOAL;
+				newState = random.nextInt(machine.getNumStates() - 1);
+				if (newState >= goal) newState++;  //skip the goal
+			}
+
+			states[lane] = newState;
+			sensorsOut[lane] = sensed;
+		}
+	}
+
+	public int getNumLanes() {
+		return currentStates.length;
+	}
+
+	/** @return the state the given lane is currently in */
+	public int getCurrentState(int lane) {
+		return currentStates[lane];
+	}
+
+	/** @return the machine every lane is exploring */
+	public StateMachine getMachine() {
+		return machine;
+	}
+
+}//class PopulationEnvironment
@@ -0,0 +1,34 @@
+/**
+ * <!-- class SplitMix64 -->
+ *
+ * The SplitMix64 generator (the one SplittableRandom uses) as plain static
+ * functions of a long state.  Environments keep that state in a field rather
+ * than holding a SplittableRandom so that forking or snapshotting a session
+ * is just a copy; each draw adds GOLDEN_GAMMA to the state and mixes it:
+ *
+ *   rngState += SplitMix64.GOLDEN_GAMMA;
+ *   long bits = SplitMix64.mix64(rngState);
+ *
+ * @version February 26 2015
+ */
+final class SplitMix64 {
+
+    /** the increment added to the state before each draw */
+    static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private SplitMix64() {}
+
+    /** @return 64 random bits from the given state (SplittableRandom.nextLong) */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** @return 32 random bits from the given state (SplittableRandom.nextInt) */
+    static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+}//class SplitMix64
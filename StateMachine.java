@@ -0,0 +1,1177 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * <!-- class StateMachine -->
+ *
+ * An immutable state machine: the transition table, its alphabet and the
+ * shortest path from every state to the goal.  Nothing about a StateMachine
+ * changes once it has been built, so a single instance can be shared by any
+ * number of agents (on any number of threads), each of which explores it
+ * through its own {@link StateMachineEnvironment}.
+ *
+ * The one exception is {@link DynamicStateMachine}, which can be edited
+ * while agents explore it.  Its edits change the transitions, shortest
+ * paths and goal in place without any synchronization, so it doesn't get
+ * this guarantee: it may only be shared by agents on the thread that edits
+ * it, or by threads that hand it over safely (e.g., through a lock or an
+ * executor) between edits and use.
+ *
+ * Actions are dense ints (indexes into the alphabet) everywhere inside the
+ * machine; alphabet characters only matter when paths are printed or given
+ * to us as Strings.
+ *
+ * @version February 26 2015
+ *
+ */
+public class StateMachine {
+
+	private final int numStates;
+	private final char[] alphabet;
+	private final int[] actionIndex;  //maps an alphabet char to its index (or -1)
+
+	//These are package-private so that DynamicStateMachine can change them
+	int goalState;
+	final TransitionTable transition;  //packed transition table
+	final int[] distance;  //length of the shortest path from each state to goal
+	final int[] nextAction;  //first action on that path (-1 at the goal)
+	boolean goalReachable;  //does every state have a path to goal?
+
+	//images[action][state] is the state reached by taking that action (built on demand)
+	private volatile int[][] images;
+
+	//shortest word that gets both states of each pair to the goal (built on
+	//demand, @see #getPairDistance)
+	private volatile char[] pairs;
+
+	/** largest machine a pair table is built for (it has N(N-1)/2 entries) */
+	public static final int PAIR_TABLE_MAX_STATES = 4096;
+
+	/** pair distances are capped here (as are pairs that can't both reach goal) */
+	public static final int PAIR_DISTANCE_CAP = Character.MAX_VALUE - 1;
+
+	//marks a pair whose distance isn't known yet
+	private static final char PAIR_UNKNOWN = Character.MAX_VALUE;
+
+	//recently compiled paths, least recently used first
+	private final Map<CompiledPath.Key, CompiledPath> compiled;
+
+	//total number of states the compiled path cache may hold results for.
+	//Each cached path holds two ints per state so this is 8MB per machine,
+	//enough for the few dozen paths an agent retries on a 10,000 state machine
+	public static final int PATH_CACHE_CELLS = 1 << 20;
+
+	//how many rows of a random machine each parallel task generates
+	private static final int GENERATE_BLOCK_SIZE = 1 << 14;
+
+	//DEBUG
+	private boolean debug = false;
+
+	/**
+	 * A constructor which allows us to hard code state machine transitions
+	 * for testing purposes.  The last state is the goal.
+	 */
+	public StateMachine(int[][] transitions, int alphaSize) {
+		this(TransitionTable.pack(transitions, alphaSize));
+	}
+
+	/**
+	 * Builds a machine around the given transition table.  The last state is
+	 * the goal.
+	 */
+	StateMachine(TransitionTable table) {
+		numStates = table.getNumStates();
+		goalState = numStates - 1;
+		transition = table;
+		alphabet = fillAlphabet(table.getAlphabetSize());
+		actionIndex = buildActionIndex(alphabet);
+		distance = new int[numStates];
+		nextAction = new int[numStates];
+		compiled = newPathCache(Math.max(1, PATH_CACHE_CELLS / numStates));
+
+		if(debug) {
+			printStateMachine();
+		}
+
+		goalReachable = findShortestPaths();
+		if(debug) {
+			System.out.println("Shortest Path: " + pathFrom(0));
+		}
+	}
+
+	/**
+	 * Builds a machine around the given transition table whose shortest paths
+	 * have already been found (e.g., a machine read back from a
+	 * {@link MachineCorpus}).  The last state is the goal.
+	 *
+	 * @param distance   length of the shortest path from each state to goal
+	 *                   (or null if a subclass keeps the paths elsewhere)
+	 * @param nextAction first action on each of those paths
+	 */
+	StateMachine(TransitionTable table, int[] distance, int[] nextAction) {
+		numStates = table.getNumStates();
+		goalState = numStates - 1;
+		transition = table;
+		alphabet = fillAlphabet(table.getAlphabetSize());
+		actionIndex = buildActionIndex(alphabet);
+		this.distance = distance;
+		this.nextAction = nextAction;
+		compiled = newPathCache(Math.max(1, PATH_CACHE_CELLS / numStates));
+
+		boolean reachable = (distance != null);
+		for (int i = 0; reachable && i < numStates; ++i) {
+			reachable = (distance[i] != -1);
+		}
+		goalReachable = reachable;
+	}
+
+	/**
+	 * generates a random state machine in which every state has a path to the
+	 * goal
+	 *
+	 * @param numStates    number of states (the last one is the goal)
+	 * @param alphabetSize number of actions
+	 * @param random       source of randomness
+	 */
+	public static StateMachine generate(int numStates, int alphabetSize, SplittableRandom random) {
+		return new StateMachine(generateStateMachine(numStates, alphabetSize, random));
+	}
+
+    /**
+     * builds an alphabet array with the given number of characters
+     */
+    static char[] fillAlphabet(int alphabetSize) {
+        char[] alphabet = new char[alphabetSize];
+        for(int i = 0; i < alphabet.length; ++i) {
+            alphabet[i] = symbolFor(i);
+        }
+        return alphabet;
+    }
+
+    /**
+     * @return the character used to print the given action: 'a' through 'z',
+     *         then 'A' through 'Z', then '0' through '9' and after that
+     *         characters from the Latin-1 supplement onwards
+     */
+    public static char symbolFor(int action) {
+        if (action < 26) return (char)('a' + action);
+        if (action < 52) return (char)('A' + action - 26);
+        if (action < 62) return (char)('0' + action - 52);
+        return (char)('\u00c0' + action - 62);
+    }
+
+    /**
+     * builds a direct lookup table so that translating a char to an action is
+     * a single array load rather than a scan of the alphabet
+     */
+    private static int[] buildActionIndex(char[] alphabet) {
+        char maxSymbol = 0;
+        for(int i = 0; i < alphabet.length; ++i) {
+            maxSymbol = (char)Math.max(maxSymbol, alphabet[i]);
+        }
+
+        int[] actionIndex = new int[maxSymbol + 1];
+        for(int i = 0; i < actionIndex.length; ++i) {
+            actionIndex[i] = -1;
+        }
+        for(int i = 0; i < alphabet.length; ++i) {
+            actionIndex[alphabet[i]] = i;
+        }
+        return actionIndex;
+    }
+
+
+    /**
+     * marks every state but the goal as having no known path so that the
+     * shortest paths can be recalcualted by findShortestPath
+     */
+    private void initPaths()
+    {
+        for(int i = 0; i < distance.length; ++i)
+        {
+            distance[i] = -1;
+            nextAction[i] = -1;
+        }
+        distance[goalState] = 0;
+    }
+
+
+	/**
+	 * A helper method to generate a random state machine transition table.
+	 *
+	 * Every state gets a random number of transitions (at least one) to
+	 * random other states on distinct random characters; the remaining
+	 * characters loop back to the state itself.  The rows are independent of
+	 * one another so large machines are filled in parallel (the result
+	 * depends only on the random source, not on how the rows were
+	 * scheduled).  Any states that cannot reach the goal are then connected
+	 * to it by {@link #connectToGoal}, so the machine never has to be thrown
+	 * away and regenerated.
+	 */
+	private static TransitionTable generateStateMachine(int numStates, int alphabetSize,
+	                                                    SplittableRandom random) {
+
+		//Create the transition table for our state machine. Each state has a
+		//numerical designation. We index into the table using the number of the
+		//state we are transitioning from, then the numerical index of the
+		//alphabetical character being read
+		TransitionTable transition = TransitionTable.allocate(numStates, alphabetSize);
+		fillRandom(transition, random);
+
+		connectToGoal(transition, random);
+		return transition;
+	}
+
+	/**
+	 * A helper method that fills a transition table with random rows
+	 * (@see #generateStateMachine) without making sure the goal can be
+	 * reached.
+	 */
+	static void fillRandom(final TransitionTable transition, SplittableRandom random) {
+		final int numStates = transition.getNumStates();
+		final int alphabetSize = transition.getAlphabetSize();
+
+		//Each block of rows gets its own generator seeded up front
+		final int numBlocks = (numStates + GENERATE_BLOCK_SIZE - 1) / GENERATE_BLOCK_SIZE;
+		final long[] blockSeeds = new long[numBlocks];
+		for (int b = 0; b < numBlocks; b++) {
+			blockSeeds[b] = random.nextLong();
+		}
+
+		IntStream blocks = IntStream.range(0, numBlocks);
+		if (numBlocks > 1) {
+			blocks = blocks.parallel();
+		}
+		blocks.forEach(b -> {
+			SplittableRandom rowRandom = new SplittableRandom(blockSeeds[b]);
+			int[] row = new int[alphabetSize];
+			int[] chars = new int[alphabetSize];
+			int end = Math.min(numStates, (b + 1) * GENERATE_BLOCK_SIZE);
+			for (int i = b * GENERATE_BLOCK_SIZE; i < end; i++) {
+				fillRow(i, numStates, rowRandom, row, chars);
+				for (int j = 0; j < alphabetSize; j++) {
+					transition.set(i, j, row[j]);
+				}
+			}
+		});
+	}
+
+	/**
+	 * A helper method to generate the transitions out of one state
+	 *
+	 * @param state      the state whose row is being filled
+	 * @param numStates  number of states in the machine
+	 * @param random     source of randomness
+	 * @param row        receives the transitions
+	 * @param chars      scratch space the size of the alphabet
+	 */
+	private static void fillRow(int state, int numStates, SplittableRandom random,
+	                            int[] row, int[] chars) {
+		int alphabetSize = row.length;
+
+		//All characters start out as self loops
+		for (int j = 0; j < alphabetSize; j++) {
+			row[j] = state;
+			chars[j] = j;
+		}
+
+		//Generate a random number of transitions
+		int numTransitions = random.nextInt(alphabetSize) + 1;
+		for (int j = 0; j < numTransitions; j++) {
+			//Randomly pick a character that has no transition yet
+			int swap = j + random.nextInt(alphabetSize - j);
+			int charToTransition = chars[swap];
+			chars[swap] = chars[j];
+			chars[j] = charToTransition;
+
+			//Randomly select a state to transition to that is not the
+			//current state
+			int nextState = random.nextInt(numStates - 1);
+			if (nextState >= state) {
+				nextState++;
+			}
+
+			row[charToTransition] = nextState;
+		}
+	}
+
+	/**
+	 * A helper method that makes sure every state of a freshly generated table
+	 * has a path to the goal.  It searches backwards from the goal; each state
+	 * that was not reached gets one of its (randomly chosen) transitions
+	 * redirected to a random state that was, and then everything that can
+	 * reach the repaired state is reached too.  Only the unreachable part of
+	 * the machine is touched and each state is searched at most once.
+	 */
+	private static void connectToGoal(TransitionTable transition, SplittableRandom random) {
+		int numStates = transition.getNumStates();
+		int alphabetSize = transition.getAlphabetSize();
+		int goal = numStates - 1;
+
+		int[] predStart = new int[numStates + 1];
+		int[] preds = buildPredecessors(transition, predStart);
+
+		//the queue doubles as the list of reached states
+		int[] queue = new int[numStates];
+		boolean[] reached = new boolean[numStates];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = goal;
+		reached[goal] = true;
+
+		for (int state = 0; ; state++) {
+			//reach everything that can reach what has been queued so far
+			while (head < tail) {
+				int currState = queue[head++];
+				for (int p = predStart[currState]; p < predStart[currState + 1]; p++) {
+					int i = preds[p];
+					if (!reached[i]) {
+						reached[i] = true;
+						queue[tail++] = i;
+					}
+				}
+			}
+			if (tail == numStates) return;
+
+			//find the next state that is still cut off from the goal
+			while (reached[state]) {
+				state++;
+			}
+
+			//pick one of its transitions to another state at random (each row
+			//has at least one) and point it at a random reached state instead.
+			//The table's predecessor lists go stale here but that is harmless:
+			//the only state they now misreport is this one, and it's reached.
+			int charToTransition;
+			do {
+				charToTransition = random.nextInt(alphabetSize);
+			} while (transition.next(state, charToTransition) == state);
+			transition.set(state, charToTransition, queue[random.nextInt(tail)]);
+
+			reached[state] = true;
+			queue[tail++] = state;
+		}
+	}
+
+	 /**
+     * A method which iterates through and prints out
+     * the two-dimension array that represents the state machine
+     */
+    public void printStateMachine() {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            writeTable(out);
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+	 /**
+     * A method which prints a .dot file (Graphviz) for visualizing a state machine
+     */
+    public void printStateMachineGraph() {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+            writeGraphviz(out);
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }//printStateMachineGraph
+
+    /**
+     * writes the transition table (one row per state, one column per action)
+     * to the given file
+     */
+    public void writeTable(File file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath())) {
+            writeTable(out);
+        }
+    }
+
+    /**
+     * writes the transition table (one row per state, one column per action)
+     * to the given destination.  Each row is built up in memory and appended
+     * in one piece, so the output should be buffered if it's slow to write
+     * to.
+     */
+    public void writeTable(Appendable out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        appendAlphabetRow(line);
+        out.append(line);
+
+        for (int i = 0; i < numStates; i++) {
+            line.setLength(0);
+            pad(line, i, 3).append(": ");
+            for (int j = 0; j < alphabet.length; j++) {
+                pad(line, transition.next(i, j), 3);
+            }
+            line.append('\n');
+            out.append(line);
+        }
+
+        line.setLength(0);
+        appendAlphabetRow(line);
+        out.append(line);
+    }//writeTable
+
+    /** appends the alphabet row that heads (and ends) a printed table */
+    private void appendAlphabetRow(StringBuilder line) {
+        line.append("     ");
+        for (int i = 0; i < alphabet.length; ++i) {
+            line.append("  ").append(alphabet[i]);
+        }
+        line.append('\n');
+    }
+
+    /** appends the given number right-justified to at least the given width */
+    private static StringBuilder pad(StringBuilder line, int value, int width) {
+        int start = line.length();
+        line.append(value);
+        while (line.length() - start < width) {
+            line.insert(start, ' ');
+        }
+        return line;
+    }
+
+    /**
+     * writes a .dot file (Graphviz) for visualizing this machine to the given
+     * file
+     */
+    public void writeGraphviz(File file) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath())) {
+            writeGraphviz(out);
+        }
+    }
+
+    /**
+     * Writes a .dot file (Graphviz) for visualizing this machine to the given
+     * destination.  There is one edge for each pair of states that has a
+     * transition between them, labeled with every action that makes it, so
+     * each state's actions are grouped by where they lead.  This takes time
+     * proportional to the size of the transition table.
+     */
+    public void writeGraphviz(Appendable out) throws IOException {
+        out.append("digraph finite_state_machine {\n");
+        out.append("node [shape = doublecircle]; Goal;\n");
+        out.append("node [shape = circle];     \n");
+
+        //each of a state's transitions packed as (destination, action) so
+        //that sorting them groups them by destination
+        long[] edges = new long[alphabet.length];
+        StringBuilder line = new StringBuilder();
+
+        //for each possible source state (skipping goal state)
+        for (int i = 0; i < numStates; i++) {
+            if (i == goalState) continue;
+            for (int k = 0; k < alphabet.length; k++) {
+                edges[k] = ((long)transition.next(i, k) << 32) | k;
+            }
+            Arrays.sort(edges);
+
+            //one line for each destination listing all actions that lead there
+            for (int k = 0; k < edges.length; ) {
+                int dest = (int)(edges[k] >>> 32);
+
+                line.setLength(0);
+                line.append("    S").append(i).append(" -> ");
+                if (dest == goalState) {
+                    line.append("Goal");
+                }
+                else {
+                    line.append('S').append(dest);
+                }
+                line.append(" [ label = \"");
+                for (boolean first = true; k < edges.length && (int)(edges[k] >>> 32) == dest; ++k) {
+                    if (!first) line.append(',');
+                    line.append(alphabet[(int)edges[k]]);
+                    first = false;
+                }
+                line.append("\" ];\n");
+                out.append(line);
+            }//for
+        }//for
+
+        out.append("}\n");
+    }//writeGraphviz
+
+
+	/**
+	 * A helper method which determines a given letter's
+	 * location in the alphabet
+	 *
+	 * @param letter
+	 * 		The letter who's index we wish to find
+	 * @return
+	 * 		The index of the given letter (or -1 if the letter was not found)
+	 */
+	public int findAlphabetIndex(char letter) {
+		// Error if letter is not in the alphabet
+		if (letter >= actionIndex.length) return -1;
+
+		return actionIndex[letter];
+	}
+
+
+	/**
+	 * A helper method which checks if one state has a transition to another
+	 * @param fromState The state to transition from
+	 * @param toState The state to transition to
+	 * @return The index into the alphabet array of the character fromState reads to transition to toState,
+	 * 			or -1 if no such character exists
+	 */
+	private int hasTransition(int fromState, int toState) {
+		for (int i = 0; i < alphabet.length; i++) {
+			if (transition.next(fromState, i) == toState) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * A helper method that builds the reverse adjacency of the transition
+	 * table in compressed form: the predecessors of state t are
+	 * preds[predStart[t]] through preds[predStart[t+1] - 1], listed in
+	 * increasing order.  Self-loops are left out.
+	 *
+	 * @param transition the table to reverse
+	 * @param predStart  receives the numStates + 1 offsets into the result
+	 * @return the predecessor list
+	 */
+	private static int[] buildPredecessors(TransitionTable transition, int[] predStart) {
+		int numStates = transition.getNumStates();
+		int alphabetSize = transition.getAlphabetSize();
+
+		//count the incoming edges of each state
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < alphabetSize; j++) {
+				int target = transition.next(i, j);
+				if (target != i) {
+					predStart[target + 1]++;
+				}
+			}
+		}
+		for (int i = 0; i < numStates; i++) {
+			predStart[i + 1] += predStart[i];
+		}
+
+		//fill in the lists (scanning sources in order keeps each list sorted)
+		int[] preds = new int[predStart[numStates]];
+		int[] fill = new int[numStates];
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < alphabetSize; j++) {
+				int target = transition.next(i, j);
+				if (target != i) {
+					preds[predStart[target] + fill[target]++] = i;
+				}
+			}
+		}
+		return preds;
+	}
+
+	/**
+	 * A helper method like {@link #buildPredecessors} that keeps the
+	 * predecessors under each action apart: the states that action a takes to
+	 * state t are preds[predStart[a*N + t]] through preds[predStart[a*N + t + 1] - 1]
+	 * (N is the number of states).  Self-loops are kept.
+	 *
+	 * @param transition the table to reverse
+	 * @param predStart  receives the alphabetSize * numStates + 1 offsets
+	 * @return the predecessor list
+	 */
+	private static int[] buildActionPredecessors(TransitionTable transition, int[] predStart) {
+		int numStates = transition.getNumStates();
+		int alphabetSize = transition.getAlphabetSize();
+
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < alphabetSize; j++) {
+				predStart[j * numStates + transition.next(i, j) + 1]++;
+			}
+		}
+		for (int k = 0; k < alphabetSize * numStates; k++) {
+			predStart[k + 1] += predStart[k];
+		}
+
+		int[] preds = new int[predStart[alphabetSize * numStates]];
+		int[] fill = Arrays.copyOf(predStart, alphabetSize * numStates);
+		for (int i = 0; i < numStates; i++) {
+			for (int j = 0; j < alphabetSize; j++) {
+				preds[fill[j * numStates + transition.next(i, j)]++] = i;
+			}
+		}
+		return preds;
+	}
+
+	/**
+	 * A helper method that generates the shortest path to the goal from each
+	 * state using a breadth-first search backwards from the goal over the
+	 * predecessor lists.  This is linear in the number of transitions.
+	 *
+	 * @return true if every state has a path to the goal, false if this is a
+	 *         bum state machine
+	 */
+	boolean findShortestPaths() {
+
+        initPaths();
+
+		int[] predStart = new int[numStates + 1];
+		int[] preds = buildPredecessors(transition, predStart);
+
+		//Create a queue and add the Goal State to the queue
+		int[] queue = new int[numStates];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = goalState;
+
+		while (head < tail) {
+			//Grab the element at the front of the queue
+			int currState = queue[head++];
+
+			//Move through each predecessor of the current state that doesn't
+			//have a path yet
+			for (int p = predStart[currState]; p < predStart[currState + 1]; p++) {
+				int i = preds[p];
+
+                //skip the ones that have a path
+                if (distance[i] != -1) continue;
+
+				//The path for state i is the first transition character from
+				//state i to the current state followed by the shortest path
+				//from the current state.  Record its length and first step
+				//and add state i onto the queue.
+				nextAction[i] = hasTransition(i, currState);
+				distance[i] = distance[currState] + 1;
+				queue[tail++] = i;
+			}
+		}
+
+		//every state has a path iff every state was queued
+		return tail == numStates;
+	}
+
+
+    /**
+     * prints the average length of all shortest paths (used for data baseline)
+     */
+    public void printAvgPathLen() {
+        long sum = 0;
+        for(int i = 0; i < numStates; ++i)
+        {
+            if (i != goalState) sum += getDistance(i);
+
+        }
+        System.out.println("average shortest path len: " + sum / (numStates - 1));
+    }
+
+	/**
+	 * A helper method that prints the shortest path from each state to the goal.
+	 */
+	public void printPaths() {
+		System.out.println("#####Paths: ");
+		for (int i = 0; i < numStates; ++i) {
+			System.out.println("#S" + i + ": " + pathFrom(i));
+		}
+	}
+
+	/**
+	 * Builds the shortest path from a given state to the goal by following
+	 * the next-action table.
+	 *
+	 * @param state the state to start from
+	 * @return the path or null if the state has no path to the goal
+	 */
+	public String pathFrom(int state) {
+		if (getDistance(state) == -1) return null;
+
+		StringBuilder path = new StringBuilder(getDistance(state));
+		while (state != goalState) {
+			int action = getNextAction(state);
+			path.append(alphabet[action]);
+			state = transition.next(state, action);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Translates a path given as alphabet characters into actions
+	 *
+	 * @return the actions or null if the path is null or contains a character
+	 *         that is not in the alphabet
+	 */
+	public int[] toActions(String path) {
+		if (path == null) return null;
+
+		int[] actions = new int[path.length()];
+		for (int i = 0; i < actions.length; ++i) {
+			actions[i] = findAlphabetIndex(path.charAt(i));
+			if (actions[i] == -1) return null;
+		}
+		return actions;
+	}
+
+	/**
+	 * Translates a sequence of actions into a printable path
+	 */
+	public String toSymbols(int[] actions) {
+		StringBuilder path = new StringBuilder(actions.length);
+		for (int action : actions) {
+			path.append(alphabet[action]);
+		}
+		return path.toString();
+	}
+
+	/**
+	 * Calculates which state the agent would be in if it followed a given path
+	 * from a given starting state.
+     *
+     * CAVEAT:  caller is responsible for providing a valid path
+     *
+     * @param begin state the agent starts in
+     * @param path  path the agent follows
+     *
+     * @return the id of the result state or -1 for invalid path
+	 */
+	public int pathResult(int begin, String path) {
+        return pathResult(begin, toActions(path));
+	}//pathResult
+
+	/**
+	 * @see #pathResult(int, String)
+	 */
+	public int pathResult(int begin, int[] path) {
+        if (path == null) return -1;
+
+        //Step through each step of the path
+        int currState = begin;
+        for(int i = 0; i < path.length; ++i) {
+            currState = transition.next(currState, path[i]);
+        }//for
+
+        return currState;
+	}//pathResult
+
+    /**
+     * Calculates the shortest path to the goal if the agent has a perfect model
+     * of the environment but does not know what state it has started in.  This
+     * method uses A* search to reduce resource usage (@see BlindPathSearch).
+     *
+     * CAVEAT: This method is solving an NP-hard probelm and can take a really
+     * long time to execute on larger FSMs.
+
+     */
+    public String shortestBlindPathToGoal() {
+        int[] path = shortestBlindPath();
+        if (path == null) return "OOPS!"; //should not be reached
+
+        return toSymbols(path);
+    }//shortestBlindPathToGoal
+
+    /**
+     * @see #shortestBlindPathToGoal
+     *
+     * @return the path as a sequence of actions
+     */
+    public int[] shortestBlindPath() {
+        return new BlindPathSearch(this).aStar().path;
+    }//shortestBlindPath
+
+    /**
+     * @see #shortestBlindPath
+     *
+     * @param numThreads how many threads to search with (1 searches on the
+     *                   calling thread)
+     */
+    public int[] shortestBlindPath(int numThreads) {
+        if (numThreads <= 1) return shortestBlindPath();
+        return new BlindPathSearch(this).parallelAStar(numThreads).path;
+    }//shortestBlindPath
+
+    /**
+     * Finds a blind path to the goal much faster than
+     * {@link #shortestBlindPath} (even on very large machines) by greedily
+     * merging pairs of states.  The path is usually a little longer than the
+     * shortest one.
+     *
+     * @see BlindPathSearch#greedy
+     */
+    public int[] greedyBlindPath() {
+        return new BlindPathSearch(this).greedy().path;
+    }//greedyBlindPath
+
+    /**
+     * Looks for the shortest blind path for at most the given amount of time
+     * using little memory (@see BlindPathSearch#idaStar).  If time runs out
+     * the best path found so far is returned, which may not be the shortest.
+     *
+     * @return the path or null if time ran out before even a greedy path
+     *         was found
+     */
+    public int[] boundedBlindPath(long budgetMillis) {
+        return new BlindPathSearch(this).idaStar(budgetMillis).path;
+    }//boundedBlindPath
+
+    /**
+     * Merges every group of states that reach the goal after the same number
+     * of steps on every path (@see MinimizedMachine).  Blind paths can be
+     * found and scored on the (often much smaller) result instead.
+     */
+    public MinimizedMachine minimize() {
+        return new MinimizedMachine(this);
+    }//minimize
+
+    /**
+     * Calculates how many steps the agent will take to reach the goal from any
+     * state in the FSM given a path that will reach the goal from any state in
+     * the FSM (@see #shortPathToGoal)
+     *
+     * CAVEAT:  User is responsible for providing a valid path
+     *
+     * @param path  the path to evaluate
+     *
+     * @return the average steps or -1 if path doesn't reach goal from all states
+     *
+     */
+    public int avgStepsToGoalWithPath(String path) {
+        int[] actions = toActions(path);
+        if (actions == null) return -1;
+
+        return avgStepsToGoalWithPath(actions);
+    }//avgStepsToGoalWithPath
+
+    /**
+     * @see #avgStepsToGoalWithPath(String)
+     */
+    public int avgStepsToGoalWithPath(int[] path) {
+        return compile(path).avgStepsToGoal();
+    }//avgStepsToGoalWithPath
+
+    /**
+     * Runs the given path from every state at once and returns the result
+     * (@see CompiledPath).  Agents keep trying the same paths so the most
+     * recently used ones are cached.  A path that extends a cached one by a
+     * single action is compiled from that one rather than from scratch.
+     *
+     * @param path a sequence of actions; it's copied if it needs to be kept
+     */
+    public CompiledPath compile(int[] path) {
+        CompiledPath.Key key = new CompiledPath.Key(path, path.length);
+        CompiledPath result = compiled.get(key);
+        if (result != null) return result;
+
+        //start from the path without its last action if that's cached
+        CompiledPath prefix = (path.length > 1)
+            ? compiled.get(new CompiledPath.Key(path, path.length - 1)) : null;
+
+        int[] actions = path.clone();
+        result = (prefix == null) ? new CompiledPath(this, actions)
+                                  : new CompiledPath(this, prefix, actions);
+        compiled.put(key.copy(), result);
+        return result;
+    }//compile
+
+    /**
+     * @return a thread-safe map that holds at most the given number of
+     *         compiled paths, dropping the least recently used one first
+     */
+    private static Map<CompiledPath.Key, CompiledPath> newPathCache(final int capacity) {
+        return Collections.synchronizedMap(
+            new LinkedHashMap<CompiledPath.Key, CompiledPath>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(
+                        Map.Entry<CompiledPath.Key, CompiledPath> eldest) {
+                    return size() > capacity;
+                }
+            });
+    }//newPathCache
+
+
+	/**
+	 * @return the shortest path from each state to the goal.  These are built
+	 *         on demand so callers should hang onto the result.
+	 */
+	public String[] getPaths() {
+		String[] paths = new String[numStates];
+		for (int i = 0; i < numStates; ++i) {
+			paths[i] = pathFrom(i);
+		}
+		return paths;
+	}
+
+	/**
+	 * @return the length of the shortest path from the given state to the goal
+	 *         (or -1 if there is no such path)
+	 */
+	public int getDistance(int state) {
+		return distance[state];
+	}
+
+	/**
+	 * @return the first action (an index into the alphabet) on the shortest
+	 *         path from the given state to the goal (or -1 if there is none)
+	 */
+	public int getNextAction(int state) {
+		return nextAction[state];
+	}
+
+
+	/**
+	 * @return true if every state has a path to the goal
+	 */
+	public boolean isGoalReachable() {
+		return goalReachable;
+	}
+
+	public int getNumStates() {
+		return numStates;
+	}
+
+	public int getGoalState() {
+		return goalState;
+	}
+
+	public int getAlphabetSize() {
+		return alphabet.length;
+	}
+
+	/**
+	 * @return the state reached by taking the given action (an index into the
+	 *         alphabet) in the given state
+	 */
+	public int next(int state, int action) {
+		return transition.next(state, action);
+	}
+
+	/**
+	 * Returns the image map for the given action: the state reached by taking
+	 * it in each state.  Searches that move many states at once with the same
+	 * action read this one array instead of a strided column of the table.
+	 * The maps are built the first time any of them is asked for.
+	 *
+	 * @return the shared map (indexed by state) which must not be modified
+	 */
+	int[] image(int action) {
+		int[][] result = images;
+		if (result == null) {
+			synchronized (this) {
+				result = images;
+				if (result == null) {
+					result = new int[alphabet.length][numStates];
+					for (int i = 0; i < numStates; ++i) {
+						for (int j = 0; j < alphabet.length; ++j) {
+							result[j][i] = transition.next(i, j);
+						}
+					}
+					images = result;
+				}
+			}
+		}
+		return result[action];
+	}
+
+	/**
+	 * throws away everything built on demand from the transition table (the
+	 * image maps and compiled paths) after the table has changed
+	 */
+	void invalidateDerived() {
+		images = null;
+		pairs = null;
+		compiled.clear();
+	}
+
+	/**
+	 * Returns the length of the shortest word that takes both of the given
+	 * states through the goal (the goal absorbs: a state that reaches it is
+	 * done).  No blind path can be shorter than this for any two states the
+	 * agent might be in.  Two states that merge into one along the way only
+	 * have that one's shortest path left to go, so this also measures how
+	 * hard the states are to merge.
+	 *
+	 * The distances of all pairs are found together the first time one is
+	 * asked for (@see #buildPairTable), which is only allowed for machines of
+	 * at most PAIR_TABLE_MAX_STATES states.
+	 *
+	 * @return the distance, capped at PAIR_DISTANCE_CAP (which is also the
+	 *         answer if the two can't both reach the goal)
+	 */
+	public int getPairDistance(int p, int q) {
+		char[] table = pairs;
+		if (table == null) {
+			synchronized (this) {
+				table = pairs;
+				if (table == null) {
+					if (numStates > PAIR_TABLE_MAX_STATES) {
+						throw new IllegalStateException("too many states for a pair table: "
+						                                + numStates);
+					}
+					table = buildPairTable();
+					pairs = table;
+				}
+			}
+		}
+		int d = pairValue(table, p, q);
+		return (d == PAIR_UNKNOWN) ? PAIR_DISTANCE_CAP : d;
+	}
+
+	/** @return true if the pair distances have already been found */
+	boolean hasPairTable() {
+		return pairs != null;
+	}
+
+	/** @return the index of the pair (p, q) with p < q in a triangular table */
+	private static int pairIndex(int p, int q) {
+		return q * (q - 1) / 2 + p;
+	}
+
+	/**
+	 * @return the distance of the given pair of states as far as the table
+	 *         knows (PAIR_UNKNOWN if it doesn't).  A pair that is really one
+	 *         state (because both are the same or one is the goal) has that
+	 *         state's distance.
+	 */
+	private int pairValue(char[] table, int p, int q) {
+		int single = -2;
+		if (p == q || q == goalState) single = p;
+		else if (p == goalState) single = q;
+
+		if (single != -2) {
+			int d = getDistance(single);
+			return (d < 0) ? PAIR_UNKNOWN : Math.min(d, PAIR_DISTANCE_CAP);
+		}
+		return (p < q) ? table[pairIndex(p, q)] : table[pairIndex(q, p)];
+	}
+
+	/**
+	 * Finds the distance of every pair of states (@see #getPairDistance)
+	 * with one breadth-first search backwards over pairs.  A pair's distance
+	 * is one more than the smallest distance of the pairs (or single states)
+	 * its actions take it to, so the search starts from the single states in
+	 * order of their distance to the goal and gives each pair that can reach
+	 * something of distance L (through the predecessor lists of each action)
+	 * distance L + 1 the first time it's found.  Every pair is found at most
+	 * once and each action of each pair is looked at once, so this takes
+	 * O(N^2 * A) time.
+	 *
+	 * Distances are stored as chars in a triangular table (one entry for each
+	 * pair p < q) which takes N(N-1) bytes; the search queue takes twice that
+	 * while the table is built.
+	 */
+	private char[] buildPairTable() {
+		final char[] table = new char[(int)((long)numStates * (numStates - 1) / 2)];
+		Arrays.fill(table, PAIR_UNKNOWN);
+
+		int[] predStart = new int[alphabet.length * numStates + 1];
+		int[] preds = buildActionPredecessors(transition, predStart);
+
+		//the single states that can reach the goal, closest first
+		int maxDistance = 0;
+		for (int i = 0; i < numStates; ++i) {
+			maxDistance = Math.max(maxDistance, getDistance(i));
+		}
+		int[] byDistance = new int[maxDistance + 2];
+		for (int i = 0; i < numStates; ++i) {
+			if (getDistance(i) >= 0) byDistance[getDistance(i) + 1]++;
+		}
+		for (int d = 0; d <= maxDistance; ++d) {
+			byDistance[d + 1] += byDistance[d];
+		}
+		int[] singles = new int[byDistance[maxDistance + 1]];
+		int[] fill = Arrays.copyOf(byDistance, maxDistance + 1);
+		for (int i = 0; i < numStates; ++i) {
+			if (getDistance(i) >= 0) singles[fill[getDistance(i)]++] = i;
+		}
+
+		//pairs (packed as q * numStates + p) in the order their distances were found
+		int[] queue = new int[table.length];
+		int head = 0;
+		int tail = 0;
+		int next = 0;  //next single state to search from
+		for (int level = 0; next < singles.length || head < tail; ++level) {
+			if (level >= PAIR_DISTANCE_CAP) break;  //the rest are left unknown
+
+			//a single state x stands for the pairs (x, x) and (x, goal)
+			while (next < singles.length && getDistance(singles[next]) == level) {
+				int x = singles[next++];
+				tail = reachPairs(table, preds, predStart, x, x, level + 1, queue, tail);
+				if (x != goalState) {
+					tail = reachPairs(table, preds, predStart, x, goalState, level + 1, queue, tail);
+				}
+			}
+			while (head < tail) {
+				int p = queue[head] % numStates;
+				int q = queue[head] / numStates;
+				if (table[pairIndex(p, q)] != level) break;
+				head++;
+				tail = reachPairs(table, preds, predStart, p, q, level + 1, queue, tail);
+			}
+		}
+
+		//pairs with the goal are just the other state
+		for (int q = 0; q < numStates; ++q) {
+			for (int p = 0; p < q; ++p) {
+				if (p == goalState || q == goalState) {
+					table[pairIndex(p, q)] = (char)pairValue(table, p, q);
+				}
+			}
+		}
+		return table;
+	}//buildPairTable
+
+	/**
+	 * gives every pair of distinct non-goal states not yet in the table that
+	 * some action takes to the states x and y the given distance and queues it
+	 *
+	 * @return the new end of the queue
+	 */
+	private int reachPairs(char[] table, int[] preds, int[] predStart, int x, int y,
+	                       int distance, int[] queue, int tail) {
+		for (int a = 0; a < alphabet.length; ++a) {
+			int xStart = predStart[a * numStates + x];
+			int xEnd = predStart[a * numStates + x + 1];
+			int yStart = predStart[a * numStates + y];
+			int yEnd = predStart[a * numStates + y + 1];
+			for (int i = xStart; i < xEnd; ++i) {
+				int p = preds[i];
+				if (p == goalState) continue;
+				//when x == y each pair of predecessors only needs to be looked at once
+				for (int j = (x == y) ? i + 1 : yStart; j < yEnd; ++j) {
+					int q = preds[j];
+					if (q == p || q == goalState) continue;
+					int index = (p < q) ? pairIndex(p, q) : pairIndex(q, p);
+					if (table[index] != PAIR_UNKNOWN) continue;
+					table[index] = (char)distance;
+					queue[tail++] = Math.max(p, q) * numStates + Math.min(p, q);
+				}
+			}
+		}
+		return tail;
+	}//reachPairs
+
+	/**
+	 * @return a copy of the alphabet
+	 */
+	public char[] getAlphabet() {
+		return alphabet.clone();
+	}
+
+	/**
+	 * @return a copy of the transition table indexed by [state][action]
+	 */
+	public int[][] getTransition() {
+		return transition.toJagged();
+	}
+
+}//class StateMachine
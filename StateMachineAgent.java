@@ -1,29 +1,32 @@
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 
 public class StateMachineAgent {
 
 	// Instance variables
 	protected StateMachineEnvironment env;
-	protected char[] alphabet;
+	protected char[] alphabet;  //only used to print actions
 	protected ArrayList<Episode> episodicMemory;
     protected int currentSuccesses = 0;
 
-    //This will be useful
-    public static Random random = new Random();
+    //reused by tryPath to receive the encoded sensors for each step
+    private int[] sensorBuffer = new int[MAX_SEQUENCE_SIZE];
+
+    //This will be useful (each agent has its own so runs can be replayed)
+    protected SplittableRandom random;
 
 	//These are used as indexes into the the sensor array
 	public static final int IS_NEW_STATE = 0;
 	public static final int IS_GOAL = 1;
 
 	//Sensor values
-	public static final int NO_TRANSITION = 0;
-	public static final int TRANSITION_ONLY = 1;
-	public static final int GOAL = 2;
+	public static final int NO_TRANSITION = StateMachineEnvironment.NO_TRANSITION;
+	public static final int TRANSITION_ONLY = StateMachineEnvironment.TRANSITION_ONLY;
+	public static final int GOAL = StateMachineEnvironment.GOAL;
 
     /** Number of state machines to test a given constant combo with */
     public static final int NUM_MACHINES = 10;
@@ -31,6 +34,18 @@ public class StateMachineAgent {
     /** Number of episodes per run */
     public static final int MAX_EPISODES = 50;
 
+    /** Seed that all the machines and agents in an experiment derive from */
+    public static long MASTER_SEED = 2015;
+
+    /** Number of threads used to search for blind paths */
+    public static int SEARCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** Whether to merge equivalent states before searching for blind paths */
+    public static boolean MINIMIZE_BEFORE_SEARCH = false;
+
+    /** Directory that blind path analyses are cached in (null to not cache) */
+    public static String ANALYSIS_CACHE_DIR = null;
+
     //filename to store experimental results
     public static final String OUTPUT_FILE = "AIReport.csv";
 
@@ -43,7 +58,7 @@ public class StateMachineAgent {
     //variables related to the SUS
     private double susScore = 0;
     private static final int MAX_SEQUENCE_SIZE = 7; //just picked 7 as a guess
-    private ArrayList<ArrayList<String>> sequencesNotPerformed;
+    private ArrayList<ArrayList<Path>> sequencesNotPerformed;
     private static int SUS_CONSTANT = 10; //will become final after testing to find values
 
     /**
@@ -68,7 +83,7 @@ public class StateMachineAgent {
 	boolean debug = true;
 
 	//specify path to take for testing if boolean is true
-	ArrayList<Character> testPath = new ArrayList<Character>(Arrays.asList('b', 'b'));
+	int[] testPath = {1, 1};
 	boolean useDefinedPath = false;
 
 	/**
@@ -77,19 +92,29 @@ public class StateMachineAgent {
 	 *
 	 */
 	public StateMachineAgent() {
-    env = new StateMachineEnvironment();
+		this(new SplittableRandom().nextLong());
+	}
+
+	/**
+	 * Creates an agent (and its environment) whose every random choice is
+	 * derived from the given seed, so that a run can be replayed exactly.
+	 */
+	public StateMachineAgent(long seed) {
+		SplittableRandom master = new SplittableRandom(seed);
+		env = new StateMachineEnvironment(master.nextLong());
+		random = master.split();
 		alphabet = env.getAlphabet();
 		episodicMemory = new ArrayList<Episode>();
 
 		//prime the epmem with a first episode that is empty
-		episodicMemory.add(new Episode(' ', NO_TRANSITION));//the space cmd means unknown cmd for first memory
+		episodicMemory.add(new Episode(Episode.NO_COMMAND, NO_TRANSITION));//unknown cmd for first memory
 
         //build the permutations of all sequences (up to max SUS len)
-        sequencesNotPerformed = new ArrayList<ArrayList<String>>();
+        sequencesNotPerformed = new ArrayList<ArrayList<Path>>();
         sequencesNotPerformed.add(0, null);//since a path of size 0 should be skipped (might not be necessary)
         for(int lengthSize=1; lengthSize<=MAX_SEQUENCE_SIZE; lengthSize++){
-            ArrayList<String> tempList = new ArrayList<String>();
-            fillPermutations(alphabet, lengthSize, tempList);
+            ArrayList<Path> tempList = new ArrayList<Path>();
+            fillPermutations(alphabet.length, lengthSize, tempList);
             sequencesNotPerformed.add(lengthSize, tempList);
         }
 	}//StateMachineAgent ctor
@@ -112,12 +137,12 @@ public class StateMachineAgent {
         while (episodicMemory.size() < MAX_EPISODES) {
             //Find sus and lms scores
             determineSusScore();
-            String currentLms = determineLmsScore();
+            Path currentLms = determineLmsScore();
 
-            String pathToAttempt;
+            Path pathToAttempt;
             //pick larger score of the three
             if (RANDOM_SCORE > susScore && RANDOM_SCORE > lmsScore) {
-                pathToAttempt = "" + generateSemiRandomAction();
+                pathToAttempt = new Path(new int[] {generateSemiRandomAction()});
             }
             else if (susScore > lmsScore) {
                 pathToAttempt = getSus();
@@ -126,15 +151,17 @@ public class StateMachineAgent {
                 pathToAttempt = currentLms;
             }
             else {//if we tied, default to a random to hopefully tweak them
-                pathToAttempt = "" + generateSemiRandomAction();
+                pathToAttempt = new Path(new int[] {generateSemiRandomAction()});
             }
 
             //execute "the chosen one"
-            Path finalPath = stringToPath(pathToAttempt);
-            tryPath(finalPath);
+            tryPath(pathToAttempt);
 
-            scanAndRemoveNewSequences(finalPath.size());
+            scanAndRemoveNewSequences(pathToAttempt.size());
         }//while
+
+        //count the moves made since the goal was last reached too
+        env.flushMetrics();
     }//exploreEnvironment
 
     /**
@@ -175,9 +202,9 @@ public class StateMachineAgent {
                 startPosition--;
             }
             for (int j=startPosition; j<=episodicMemory.size()-i; j++){
-                String currentPath = ""; //path in memory to test
+                Path currentPath = new Path(); //path in memory to test
                 for (int k=0; k<i; k++){ //iterate the size of the path through
-                    currentPath += episodicMemory.get(j+k).command;
+                    currentPath.add(k, episodicMemory.get(j+k).command);
                 }
 
                 //test if this path is in SNP and remove if so, huzzah!
@@ -194,9 +221,9 @@ public class StateMachineAgent {
      * Returns the sus by fishing through the sequencesNotPerformed and getting
      * a path of the smallest length
      *
-     * @return a string if a sus is found or null if none found
+     * @return a path if a sus is found or null if none found
      */
-    public String getSus() {
+    public Path getSus() {
         for (int i=1; i<sequencesNotPerformed.size(); i++) { //go through path sizes
             if (!sequencesNotPerformed.get(i).isEmpty()) { //if not empty, there's a victim inside
                 return sequencesNotPerformed.get(i).remove(0);//returns and removes sus
@@ -240,44 +267,43 @@ public class StateMachineAgent {
     /**
      * fillPermutations
      *
-     * driver method to generate all strings for the sequencesNotPerformed
+     * driver method to generate all paths for the sequencesNotPerformed
      * arraylist
      *
-     * @param set set of chars that can be used to build strings (alphabet)
-     * @param k length of string to build up to
-     * @param permutations place to store the strings
+     * @param n number of actions that can be used to build paths (alphabet size)
+     * @param k length of path to build up to
+     * @param permutations place to store the paths
      */
-    public void fillPermutations(char set[], int k, ArrayList<String> permutations){
-        int n = set.length;
-        buildPermutations(set, "", n, k, permutations);
+    public void fillPermutations(int n, int k, ArrayList<Path> permutations){
+        buildPermutations(new Path(), n, k, permutations);
     }
 
     /**
      * buildPermutations
      *
-     * helper method to actually build all the permutations of the strings and
+     * helper method to actually build all the permutations of the paths and
      * store them in the arraylist
      *
-     * @param set set of chars that can be used to build strings (alphabet)
      * @param prefix used to slowly build up different permutations
-     * @param n length of set (sort of clumsy way to do it right now)
-     * @param k length of string to build up to
-     * @param permutations place to store the strings
+     * @param n number of actions that can be used to build paths (alphabet size)
+     * @param k length of path to build up to
+     * @param permutations place to store the paths
      */
-    public void buildPermutations(char set[], String prefix, int n, int k, ArrayList<String> permutations) {
+    public void buildPermutations(Path prefix, int n, int k, ArrayList<Path> permutations) {
         // Base case: k is 0
         if (k == 0) {
             permutations.add(prefix);
             return;
         }
 
-        // One by one add all characters from set and recursively
+        // One by one add all actions and recursively
         // call for k equals to k-1
         for (int i = 0; i < n; ++i) {
-            // Next character of input added
-            String newPrefix = prefix + set[i];
-            // k is decreased, because we have added a new character
-            buildPermutations(set, newPrefix, n, k - 1, permutations);
+            // Next action added
+            Path newPrefix = prefix.copy();
+            newPrefix.add(newPrefix.size(), i);
+            // k is decreased, because we have added a new action
+            buildPermutations(newPrefix, n, k - 1, permutations);
         }
     }//buildPermutations
 
@@ -339,14 +365,19 @@ public class StateMachineAgent {
      *
      * Figures out the lms score and sets it using passed info from maxMatchedString
      *
-     * @return pathToAttempt the string to exec if lms is chosen
+     * @return pathToAttempt the path to exec if lms is chosen
      */
-    private String determineLmsScore() {
+    private Path determineLmsScore() {
         int[] matchedStringInfo = maxMatchedString();
-        String pathToAttempt = stepsToGoal(matchedStringInfo[MATCHED_INDEX]);
+        Path pathToAttempt = stepsToGoal(matchedStringInfo[MATCHED_INDEX]);
         //calc score lengthMatched/numStepsToGoal
         double lengthMatched = matchedStringInfo[MATCHED_LENGTH];
-        double numStepsToGoal = pathToAttempt.length();
+        double numStepsToGoal = pathToAttempt.size();
+
+        if (numStepsToGoal == 0) {//nothing to try
+            lmsScore = 0;
+            return pathToAttempt;
+        }
 
         lmsScore = (lengthMatched / numStepsToGoal) * LMS_CONSTANT;
         return pathToAttempt;
@@ -357,15 +388,16 @@ public class StateMachineAgent {
      *
      * takes an index and finds the path to reach the next goal
      *
-     * @return steps the string to exec to "reach" goal
+     * @return steps the path to exec to "reach" goal (empty if there's no
+     *         memory to evaluate)
      */
-    protected String stepsToGoal(int idx) {
-        //loop to next goal appending all chars
-        String steps = "";
+    protected Path stepsToGoal(int idx) {
+        //loop to next goal appending all actions
+        Path steps = new Path();
         if (idx ==0)//no mem to evaluate
-            return " ";
+            return steps;
         for (int i=idx; i<episodicMemory.size(); i++) {
-            steps += episodicMemory.get(i).command;
+            steps.add(steps.size(), episodicMemory.get(i).command);
             //break if at goal
             if (episodicMemory.get(i).sensorValue == GOAL){
                 break;
@@ -392,9 +424,9 @@ public class StateMachineAgent {
             //We want to compare the command from the prev episode and the
             //sensors from the "right now" episode to the sequence at the
             //index indicated by 'i'
-            char currCmd = episodicMemory.get(indexOfMatchingAction).command;
+            int currCmd = episodicMemory.get(indexOfMatchingAction).command;
             int currSensors = episodicMemory.get(indexOfMatchingAction).sensorValue;
-            char prevCmd = episodicMemory.get(i).command;
+            int prevCmd = episodicMemory.get(i).command;
             int prevSensors = episodicMemory.get(i).sensorValue;
 
             match = ( (currCmd == prevCmd) && (currSensors == prevSensors) );
@@ -451,36 +483,42 @@ public class StateMachineAgent {
 	 * 		false if it did not
 	 */
 	public boolean tryPath(Path pathToTry) {
-		boolean[] sensors;
-		// Enter each character in the path
-		for (int i = 0; i < pathToTry.size(); i++) {
-			sensors = env.tick(pathToTry.get(i));
-			int encodedSensorResult = encodeSensors(sensors);
-			episodicMemory.add(new Episode(pathToTry.get(i), encodedSensorResult));
-
-            if (sensors[IS_GOAL]){
-                currentSuccesses++;
-            }
+		if (sensorBuffer.length < pathToTry.size()) {
+			sensorBuffer = new int[pathToTry.size()];
+		}
+
+		// Enter the whole path at once.  The environment stops early if the
+		// goal is reached.
+		int numExecuted = env.tick(pathToTry, sensorBuffer);
+		for (int i = 0; i < numExecuted; i++) {
+			episodicMemory.add(new Episode(pathToTry.get(i), sensorBuffer[i]));
+		}
 
-			if (sensors[IS_GOAL] && i == pathToTry.size()-1) { //if at goal and last cmd return true
-				return true;
-			}
+		if (numExecuted == 0 || sensorBuffer[numExecuted - 1] != GOAL) {
+			// If we make it through the entire path, it was unsuccessful
+			return false;
 		}
-		// If we make it through the entire loop, the path was unsuccessful
-		return false;
+
+		currentSuccesses++;
+		return numExecuted == pathToTry.size(); //only a success on the last cmd
 	}//tryPath
 
     /**
      * stringToPath
      *
-     * Takes a string of chars and converts them into a path
+     * Takes a string of alphabet chars and converts them into a path
      *
      * @param commands string to be converted
+     * @throws IllegalArgumentException if a char isn't in the alphabet
      */
     public Path stringToPath(String commands) {
-        ArrayList<Character> generatedPath = new ArrayList<Character>();
+        int[] generatedPath = new int[commands.length()];
         for (int i=0; i<commands.length(); i++) {
-            generatedPath.add(i, commands.charAt(i));
+            generatedPath[i] = findAlphabetIndex(commands.charAt(i));
+            if (generatedPath[i] < 0) {
+                throw new IllegalArgumentException("not in the alphabet: '"
+                                                   + commands.charAt(i) + "'");
+            }
         }
         return new Path(generatedPath);
     }//stringToPath
@@ -494,11 +532,11 @@ public class StateMachineAgent {
 	 */
 	public Path getMostRecentPath() {
 		int lastGoal = findLastGoal(episodicMemory.size() - 2) + 1;
-		ArrayList<Character> pathChars = new ArrayList<Character>();
+		Path path = new Path();
 		for (int i = lastGoal; i < episodicMemory.size(); i++) {
-			pathChars.add(episodicMemory.get(i).command);
+			path.add(path.size(), episodicMemory.get(i).command);
 		}
-		return new Path(pathChars);
+		return path;
 	}
 
     //TODO: Save this method for later use
@@ -509,7 +547,7 @@ public class StateMachineAgent {
 	 * This will be changed to a more intelligent scheme later on
 	 */
 	public void reset() {
-		char toCheck;
+		int toCheck;
 		boolean[] sensors;
 		int encodedSensorResult;
 
@@ -536,21 +574,21 @@ public class StateMachineAgent {
 	 *
 	 * @return A random action for the Agent to take
 	 */
-	public char generateSemiRandomAction() {
+	public int generateSemiRandomAction() {
         //decide if a dup command is acceptable
-        double chanceForDup = Math.random();
+        double chanceForDup = random.nextDouble();
         boolean dupPermitted = false;
         if (chanceForDup < DUPLICATE_FORGIVENESS) {
             dupPermitted = true;
         }
 
         //keep generating random moves till it is different from last or dups are allowed
-        char possibleCmd;
+        int possibleCmd;
         Episode lastEpisode = episodicMemory.get(episodicMemory.size() - 1);
-        char lastCommand = lastEpisode.command;
+        int lastCommand = lastEpisode.command;
 
         do {
-            possibleCmd = alphabet[random.nextInt(alphabet.length)];
+            possibleCmd = random.nextInt(alphabet.length);
             if (dupPermitted)//if they are allowed we don't care to check for dup
                 break;
         } while (possibleCmd == lastCommand); //same cmd, redo loop
@@ -587,13 +625,7 @@ public class StateMachineAgent {
 	 * @return the index of toCheck
 	 */
 	protected int indexOfCharacter(char toCheck) {
-		for (int i = 0; i < alphabet.length; i++) {
-			if (alphabet[i] == toCheck) {
-				return i;
-			}
-		}
-
-		return -1;
+		return env.findAlphabetIndex(toCheck);
 	}
 
 	/**
@@ -606,14 +638,7 @@ public class StateMachineAgent {
 	 * 		The index of the given letter (or -1 if the letter was not found)
 	 */
 	protected int findAlphabetIndex(char letter) {
-		// Iterate the through the alphabet to find the index of letter
-		for(int i = 0; i < alphabet.length; i++){
-			if(alphabet[i] == letter)
-				return i;
-		}
-
-		// Error if letter is not found
-		return -1;
+		return env.findAlphabetIndex(letter);
 	}
 
 	/**
@@ -658,8 +683,9 @@ public class StateMachineAgent {
         try {
 
             FileWriter csv = new FileWriter(OUTPUT_FILE);
+            SplittableRandom seeds = new SplittableRandom(MASTER_SEED);
             for(int i = 0; i < NUM_MACHINES; ++i) {
-                StateMachineAgent gilligan = new StateMachineAgent();
+                StateMachineAgent gilligan = new StateMachineAgent(seeds.nextLong());
                 gilligan.exploreEnvironment();
                 gilligan.recordLearningCurve(csv);
             }
@@ -685,9 +711,12 @@ public class StateMachineAgent {
     public static void tryOneCombo(FileWriter csv, int randWeight, int susWeight, int lmsWeight)
     {
         double sum = 0;//total num successes
+
+        //every combo is tested on the same FSMs so the results are comparable
+        SplittableRandom seeds = new SplittableRandom(MASTER_SEED);
         for (int l = 0; l < NUM_MACHINES; l++) {//test with multiple FSMs
 
-            StateMachineAgent gilligan = new StateMachineAgent();
+            StateMachineAgent gilligan = new StateMachineAgent(seeds.nextLong());
             gilligan.RANDOM_SCORE = randWeight;
             gilligan.SUS_CONSTANT = susWeight;
             gilligan.LMS_CONSTANT = lmsWeight;
@@ -759,6 +788,7 @@ public class StateMachineAgent {
             FileWriter csv = new FileWriter(OUTPUT_FILE);
             csv.append("Random,SUS,LMS,Average Score\n");
 
+            SplittableRandom random = new SplittableRandom(MASTER_SEED);
             for(int i = 0; i < numCombos; ++i)
             {
                 int randWeight = random.nextInt(6) + 1;
@@ -786,17 +816,91 @@ public class StateMachineAgent {
     public static int tryAvgWithShortPath(int numTimes)
     {
         int sumOfAvgSteps = 0;
+        AnalysisCache cache = openAnalysisCache();
+        SplittableRandom seeds = new SplittableRandom(MASTER_SEED);
         for(int i = 0; i < numTimes; ++i)
         {
-            StateMachineEnvironment env = new StateMachineEnvironment();
-            String path = env.shortestBlindPathToGoal();
-            sumOfAvgSteps += env.avgStepsToGoalWithPath(path);
+            StateMachineEnvironment env = new StateMachineEnvironment(seeds.nextLong());
+            if (MINIMIZE_BEFORE_SEARCH) {
+                MinimizedMachine minimized = env.minimize();
+                if (cache != null) {
+                    sumOfAvgSteps += cache.analyze(minimized, SEARCH_THREADS).avgSteps;
+                }
+                else {
+                    int[] path = minimized.shortestBlindPath(SEARCH_THREADS);
+                    sumOfAvgSteps += minimized.avgStepsToGoalWithPath(path);
+                }
+            }
+            else if (cache != null) {
+                sumOfAvgSteps += cache.analyze(env.getMachine(), SEARCH_THREADS).avgSteps;
+            }
+            else {
+                int[] path = env.shortestBlindPath(SEARCH_THREADS);
+                sumOfAvgSteps += env.avgStepsToGoalWithPath(path);
+            }
         }
 
         return sumOfAvgSteps / numTimes;
 
     }//tryAvgWithShortPath
 
+    /**
+     * @return the cache in ANALYSIS_CACHE_DIR or null if caching is off or
+     *         the directory can't be used
+     */
+    private static AnalysisCache openAnalysisCache() {
+        if (ANALYSIS_CACHE_DIR == null) return null;
+        try {
+            return new AnalysisCache(new File(ANALYSIS_CACHE_DIR));
+        }
+        catch (IOException e) {
+            System.out.println("openAnalysisCache: Could not use " + ANALYSIS_CACHE_DIR
+                               + ", not caching");
+            return null;
+        }
+    }//openAnalysisCache
+
+	/**
+	 * tryGreedyVsShortPath
+     *
+     * compares the blind path found by the fast greedy search with the
+     * shortest one.  For each FSM the length of each path and the average
+     * number of steps to goal when following it are printed.  The shortest
+     * path is only looked for on machines with at most maxExactStates states
+     * since that search can take a really long time on bigger ones.
+     *
+     * @param numTimes        number of FSMs to compare on
+     * @param numStates       number of states in each FSM
+     * @param maxExactStates  largest FSM to find the shortest path for
+	 */
+    public static void tryGreedyVsShortPath(int numTimes, int numStates, int maxExactStates)
+    {
+        SplittableRandom seeds = new SplittableRandom(MASTER_SEED);
+        System.out.println("Greedy Len,Greedy Avg,Greedy ms,Exact Len,Exact Avg,Exact ms");
+        for(int i = 0; i < numTimes; ++i)
+        {
+            StateMachine machine = StateMachine.generate(numStates,
+                    StateMachineEnvironment.ALPHABET_SIZE, seeds.split());
+
+            BlindPathSearch search = new BlindPathSearch(machine);
+            BlindPathSearch.Result greedy = search.greedy();
+            String line = greedy.path.length + ","
+                    + machine.avgStepsToGoalWithPath(greedy.path) + ","
+                    + greedy.millis;
+
+            if (numStates <= maxExactStates) {
+                BlindPathSearch.Result exact = search.parallelAStar(SEARCH_THREADS);
+                line += "," + exact.path.length + ","
+                        + machine.avgStepsToGoalWithPath(exact.path) + ","
+                        + exact.millis;
+            }
+            else {
+                line += ",,,";
+            }
+            System.out.println(line);
+        }
+    }//tryGreedyVsShortPath
+
 
 
 	/**
@@ -1,6 +1,5 @@
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.TreeSet;
+import java.io.IOException;
+import java.util.SplittableRandom;
 
 /**
  * <!-- class StateMachineEnvironment -->
@@ -12,6 +11,15 @@ import java.util.TreeSet;
  * be true, if not it will be false. The agent is also able
  * to sense if it has reached the desired goal state.
  *
+ * The machine itself lives in an immutable {@link StateMachine}.  An
+ * environment is just a cheap session over it that owns the agent's current
+ * state and random number generator, so many environments can share one
+ * machine.  Every environment can be recreated exactly from its seed.
+ *
+ * A session's whole state is two numbers (its current state and the state of
+ * its random number generator) so it can be forked in constant time, e.g.
+ * to try out a path without disturbing the real episode.
+ *
  * @author Kirkland Spector
  * @author Chandler Underwood
  *
@@ -24,26 +32,40 @@ import java.util.TreeSet;
  */
 public class StateMachineEnvironment {
 
-	// Instance variables
-	public static int NUM_STATES = 50;
-	public static int GOAL_STATE = NUM_STATES - 1;
-	public static int ALPHABET_SIZE = 3;  //this must be in the range [2,26]
+	// Default sizes for randomly generated machines
+	public static final int NUM_STATES = 50;
+	public static final int GOAL_STATE = NUM_STATES - 1;
+	public static final int ALPHABET_SIZE = 3;  //this must be at least 2
 
 	 //These are used as indexes into the the sensor array
 	private static final int IS_NEW_STATE = 0;
 	private static final int IS_GOAL = 1;
 
+	//Encoded sensor values written by the batched tick
+	public static final int NO_TRANSITION = 0;
+	public static final int TRANSITION_ONLY = 1;
+	public static final int GOAL = 2;
+
 
-	private int[][] transition;  //transition table
-	private char[] alphabet;
-	private String[] paths;  //the shortest path from each state to goal
-	public int currentState;
+	private final StateMachine machine;  //shared, read-only
+	private int currentState;
 
-    //this will be useful
-    private Random random = new Random();
+	//state of the SplitMix64 generator that picks the state we restart in
+	//after reaching the goal.  It's kept as a plain long (rather than a
+	//SplittableRandom) so that forking a session is just a copy.
+	private long rngState;
+	private final long seed;  //seed the generator started from (for replays)
 
-	//DEBUG
-	private boolean debug = false;
+	//where this session's counts go (null to not count) along with the
+	//counts it hasn't handed over yet (@see EnvironmentMetrics)
+	private EnvironmentMetrics metrics = EnvironmentMetrics.global();
+	private long pendingTicks = 0;
+	private long pendingSelfLoops = 0;
+	private long stepsSinceGoal = 0;
+
+	//counts are handed over at least this often (a power of two) so that
+	//sessions that rarely or never reach the goal are seen too
+	private static final long METRICS_FLUSH_TICKS = 1L << 12;
 
     /**
      * StatMachineEnvironment
@@ -51,19 +73,20 @@ public class StateMachineEnvironment {
      * Constructor to build an environment using the the defined sizes set above
      */
 	public StateMachineEnvironment() {
-		paths = new String[NUM_STATES];
-		paths[GOAL_STATE] = "";
-		fillAlphabet();
-		currentState = 0;
-		generateStateMachine();
-		if(debug){
-			printStateMachine();
-		}
+		this(new SplittableRandom().nextLong());
+	}
 
-		findShortestPaths();
-		if (debug) {
-			System.out.println("Shortest Path: " + paths[0]);
-		}
+	/**
+	 * Builds a random environment of the default size.  The same seed always
+	 * yields the same machine and the same sequence of resets.
+	 */
+	public StateMachineEnvironment(long seed) {
+		this(new SplittableRandom(seed));
+	}
+
+	/** splits the machine's and the session's generators off the master */
+	private StateMachineEnvironment(SplittableRandom master) {
+		this(StateMachine.generate(NUM_STATES, ALPHABET_SIZE, master.split()), master.nextLong());
 	}
 
 	/**
@@ -71,196 +94,119 @@ public class StateMachineEnvironment {
 	 * for testing purposes
 	 */
 	public StateMachineEnvironment(int[][] transitions, int alphaSize) {
-		NUM_STATES = transitions.length;
-		GOAL_STATE = NUM_STATES - 1;
-		ALPHABET_SIZE = alphaSize;
-
-		paths = new String[NUM_STATES];
-		paths[GOAL_STATE] = "";
-		fillAlphabet();
-		currentState = 0;
-		transition = transitions;
+		this(hardCodedMachine(transitions, alphaSize), new SplittableRandom().nextLong());
+	}
 
-		if(debug) {
-			printStateMachine();
-		}
+	/**
+	 * Creates a new session on an existing (possibly shared) machine
+	 */
+	public StateMachineEnvironment(StateMachine machine) {
+		this(machine, new SplittableRandom().nextLong());
+	}
 
-		findShortestPaths();
-		if(debug) {
-			System.out.println("Shortest Path: " + paths[0]);
-		}
+	/**
+	 * Creates a new session on an existing (possibly shared) machine whose
+	 * resets are driven by the given seed
+	 */
+	public StateMachineEnvironment(StateMachine machine, long seed) {
+		this.machine = machine;
+		this.seed = seed;
+		rngState = seed;
+		currentState = 0;
 	}
 
-    /**
-     * fills the alphabet array with ALPHABET_SIZE characters
-     *
-     * In the future, it'd be nice to handle sizes greater than 26.  Right now
-     * that's the max.
-     */
-    void fillAlphabet() {
-        alphabet = new char[ALPHABET_SIZE];
-        for(int i = 0; i < alphabet.length; ++i) {
-            char next = (char)('a' + i);
-            alphabet[i] = next;
-        }
-    }
+	/** copies the given session (@see #fork) */
+	private StateMachineEnvironment(StateMachineEnvironment other) {
+		machine = other.machine;
+		seed = other.seed;
+		rngState = other.rngState;
+		currentState = other.currentState;
+	}
 
-    /**
-     * initializes the list of shortest paths to nulls again so that they can be
-     * recalcualted by findShortestPath
-     */
-    private void initPaths()
-    {
-        for(int i = 0; i < paths.length-1; ++i)
-        {
-            paths[i] = null;
-        }
-        paths[paths.length - 1] = "";
-    }
+	/**
+	 * Creates a copy of this session in its current state.  The copy shares
+	 * the machine and goes on exactly as this session would have (including
+	 * where it restarts after reaching the goal) but moving one doesn't
+	 * affect the other.  Forks are for trying things out so they don't
+	 * report any metrics.
+	 */
+	public StateMachineEnvironment fork() {
+		StateMachineEnvironment copy = new StateMachineEnvironment(this);
+		copy.metrics = null;
+		return copy;
+	}
 
 	/**
-	 * A helper method to generate a random state machine environment
+	 * Puts this session back into the state the given one is in, e.g. to
+	 * rewind after a lookahead or to reuse one fork for many rollouts
+	 * without allocating.
+	 *
+	 * @param snapshot a session on the same machine (usually a fork of this one)
 	 */
-	private void generateStateMachine() {
-
-		//Create the transition table for our state machine. Each state has a
-		//numerical designation. We index into the array using the number of the
-		//state we are transitioning from, then the numerical index of the
-		//alphabetical character being read
-		transition = new int[NUM_STATES][alphabet.length];
-		int charToTransition;
-
-        	// //DEBUG
-		// System.out.println(transition[0][0]);
-
-		//Initialize all the values to -1 so we can tell if there's a transition
-		//there or not (since 0 is a valid state to transition to, and the array
-		//will initially consist of all 0s)
-		for (int i = 0; i < NUM_STATES; i++) {
-			for (int j = 0; j < transition[i].length; j++) {
-				transition[i][j] = -1;
-			}
+	public void restore(StateMachineEnvironment snapshot) {
+		if (snapshot.machine != machine) {
+			throw new IllegalArgumentException("can't restore a session on a different machine");
 		}
+		rngState = snapshot.rngState;
+		currentState = snapshot.currentState;
+	}
 
-		//Iterate through each row of the Transition Table so we can set the
-		//transitions out of each state in the state machine
-		for (int i = 0; i < NUM_STATES; i++) {
-
-			//Generate a random number of transitions
-            int numTransitions = random.nextInt(alphabet.length) + 1;
-			for (int j = 0; j < numTransitions; j++) {
-
-				//Randomly generate a character to transition on
-				charToTransition = random.nextInt(transition[i].length);
-
-				//if there is already a transition for that character, generate a new character to transition on
-				if (transition[i][charToTransition] != -1) {
-					j--;
-					continue;
-				}
-
-				//Randomly select a state to transition to that is not the
-				//current state, then set the transition from the current state
-				//on the randomly generated character to the randomly generated
-				//state
-				int nextState = random.nextInt(NUM_STATES);
-
-				while(nextState == i) {
-					nextState = random.nextInt(NUM_STATES);
-				}
-
-				transition[i][charToTransition] = nextState;
-
-			}
+	/**
+	 * Creates a new session on a machine from a pre-generated corpus whose
+	 * resets are driven by the given seed.  All sessions on the same machine
+	 * of the same corpus share it.
+	 *
+	 * @param corpus an open corpus (@see MachineCorpus#open)
+	 * @param index  which of its machines to explore
+	 */
+	public StateMachineEnvironment(MachineCorpus corpus, int index, long seed) {
+		this(corpus.get(index), seed);
+	}
 
-			//For all characters for the current state that do not have a
-			//transition, set the transition equal to current state
-			for(int j = 0; j < transition[i].length; j++) {
-				if(transition[i][j] == -1){
-					transition[i][j] = i;
-				}
-			}
+	/**
+	 * builds a machine from hard coded transitions.  As has always been the
+	 * case, if some state has no path to the goal we fall back to a random
+	 * machine of the same size.
+	 */
+	private static StateMachine hardCodedMachine(int[][] transitions, int alphaSize) {
+		StateMachine machine = new StateMachine(transitions, alphaSize);
+		if (!machine.isGoalReachable()) {
+			machine = StateMachine.generate(transitions.length, alphaSize, new SplittableRandom());
 		}
+		return machine;
 	}
 
-	 /**
-     * A method which iterates through and prints out
-     * the two-dimension array that represents the state machine
-     */
-    public void printStateMachine() {
-        System.out.print("     ");
-        for(int i = 0; i < ALPHABET_SIZE; ++i) {
-            System.out.printf("%3c", alphabet[i]);
-        }
-        System.out.println();
-
-        for (int i = 0; i < NUM_STATES; i++) {
-            System.out.printf("%3d: ", i);
-
-            for (int j = 0; j < alphabet.length; j++) {
-                System.out.printf("%3d", transition[i][j]);
-            }
-            System.out.println();
-        }
-
-        System.out.print("     ");
-        for(int i = 0; i < ALPHABET_SIZE; ++i) {
-            System.out.printf("%3c", alphabet[i]);
-        }
-        System.out.println();
-    }
-
-	 /**
-     * A method which prints a .dot file (Graphviz) for visualizing a state machine
-     */
-    public void printStateMachineGraph() {
-        System.out.println("digraph finite_state_machine {");
-        System.out.println("node [shape = doublecircle]; Goal;");
-        System.out.println("node [shape = circle];     ");
-
-        //for each possible source state (skipping goal state)
-        for (int i = 0; i < NUM_STATES - 1; i++) {
-            String src = "S" + i;
-
-            //for each possible destination state
-            for (int j = 0; j < NUM_STATES; j++) {
-                String dest = "S" + j;
-                String actions = "";
-
-                //find all actions that lead from source to dest
-                for (int k = 0; k < alphabet.length; k++) {
-                    if (transition[i][k] == j)
-                    {
-                        actions = actions + alphabet[k] + ",";
-                    }
-                }
-
-                //if no actions found, skip
-                if (actions.length() == 0) continue;
-
-                //remove the trailing command on the actions list
-                actions = actions.substring(0,actions.length() - 1);
-
-                //if the destination is the goal, call it such
-                if (j == GOAL_STATE)
-                {
-                    dest = "Goal";
-                }
-
-                System.out.println("    " + src + " -> " + dest + " [ label = \"" + actions + "\" ];");
-            }//for
-        }//for
-
-        System.out.println("}");
-    }//printStateMachineGraph
-
 	/**
 	 * Resets the current state back to a state not the goal
 	 */
 	private void reset() {
-        Random randoSquew = new Random();
-        int randoState = randoSquew.nextInt(NUM_STATES - 1);
+        int randoState = nextInt(machine.getNumStates() - 1);
+        if (randoState >= machine.getGoalState()) randoState++;  //skip the goal
 		currentState = randoState;
+
+		flushMetrics();
+		if (metrics != null) metrics.recordReset();
+	}
+
+	/**
+	 * @return a random int in [0, bound) drawn the same way
+	 *         SplittableRandom.nextInt(bound) would be from the same state
+	 */
+	private int nextInt(int bound) {
+		int r = nextInt();
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			return r & m;  //bound is a power of two
+		}
+
+		//reject values that would make some results more likely than others
+		for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1);
+		return r;
+	}
+
+	/** @return the next 32 random bits from the SplitMix64 generator */
+	private int nextInt() {
+		return SplitMix64.mix32(rngState += SplitMix64.GOLDEN_GAMMA);
 	}
 
 	/**
@@ -268,343 +214,307 @@ public class StateMachineEnvironment {
 	 * the current state and the agent's sensors if needed.
 	 *
 	 * @param move
-	 * 		The move the agent is making
+	 * 		The move the agent is making (an index into the alphabet)
 	 * @return
 	 * 		The agent's updated sensors
 	 */
-	public boolean[] tick(char move) {
+	public boolean[] tick(int move) {
 		// An array of booleans to keep track of the agents
 		// two sensors. The first represents if he is in a new
 		// state and the second represents if he is at the goal
 		boolean[] sensors = {false, false};
-		int newState = transition[currentState][findAlphabetIndex(move)];
+		int sensed = step(move);
 
-		// If the attempted letter brings us to a new state
-		// update the current state and the new state sensor
-		if(newState != currentState){
-			currentState = newState;
+		// Reaching the goal always means we moved to a new state
+		if(sensed != NO_TRANSITION){
 			sensors[IS_NEW_STATE] = true;
 		}
-
-		// If we have reached the goal, update the goal sensor
-		if(newState == GOAL_STATE){
+		if(sensed == GOAL){
 			sensors[IS_GOAL] = true;
-			reset();
 		}
 
 		return sensors;
 	}
 
 	/**
-	 * A helper method which determines a given letter's
-	 * location in the alphabet for the tick method
+	 * @see #tick(int)
 	 *
-	 * @param letter
-	 * 		The letter who's index we wish to find
-	 * @return
-	 * 		The index of the given letter (or -1 if the letter was not found)
+	 * @param move the character in the alphabet for the move being made
+	 */
+	public boolean[] tick(char move) {
+		int action = machine.findAlphabetIndex(move);
+		if (action < 0) throw new IllegalArgumentException("not in the alphabet: '" + move + "'");
+		return tick(action);
+	}
+
+	/**
+	 * Executes a sequence of moves in one call.  Each move's sensor result is
+	 * written to sensorsOut already encoded as NO_TRANSITION,
+	 * TRANSITION_ONLY or GOAL.  Execution stops right after the goal is
+	 * reached, so any moves following the goal are not taken.
+	 *
+	 * @param moves      the moves to make (indexes into the alphabet)
+	 * @param length     how many of the moves to make
+	 * @param sensorsOut receives the encoded sensors for each move taken
+	 * @return the number of moves actually taken
 	 */
-	private int findAlphabetIndex(char letter) {
-		// Iterate the through the alphabet to find the index of letter
-		for(int i = 0; i < alphabet.length; i++){
-			if(alphabet[i] == letter)
-				return i;
+	public int tick(int[] moves, int length, int[] sensorsOut) {
+		for (int i = 0; i < length; i++) {
+			int sensed = step(moves[i]);
+			sensorsOut[i] = sensed;
+			if (sensed == GOAL) return i + 1;
 		}
+		return length;
+	}
 
-		// Error if letter is not found
-		return -1;
+	/**
+	 * Executes an entire path in one call.
+	 *
+	 * @see #tick(int[], int, int[])
+	 */
+	public int tick(Path path, int[] sensorsOut) {
+		int length = path.size();
+		for (int i = 0; i < length; i++) {
+			int sensed = step(path.get(i));
+			sensorsOut[i] = sensed;
+			if (sensed == GOAL) return i + 1;
+		}
+		return length;
 	}
 
 	/**
-	 * A helper method which checks if one state has a transition to another
-	 * @param fromState The state to transition from
-	 * @param toState The state to transition to
-	 * @return The index into the alphabet array of the character fromState reads to transition to toState,
-	 * 			or -1 if no such character exists
+	 * Makes sure an action is an index into an alphabet of the given size.
+	 * Every machine packs its transitions row by row, so any other number
+	 * would quietly read another state's row (or run off the end).
+	 *
+	 * @throws IllegalArgumentException if it isn't
 	 */
-	private int hasTransition(int fromState, int toState) {
-		for (int i = 0; i < transition[fromState].length; i++) {
-			if (transition[fromState][i] == toState) {
-				return i;
-			}
+	static void checkAction(int action, int alphabetSize) {
+		if (action < 0 || action >= alphabetSize) {
+			throw new IllegalArgumentException("no such action: " + action);
 		}
-		return -1;
 	}
 
 	/**
-	 * A helper method that generates the shortest path to the goal from each
-	 * state using Dijkstra's algorithm
+	 * takes one move and updates the current state
+	 *
+	 * @param action index of the move in the alphabet
+	 * @return the encoded sensor value for the move
+	 * @throws IllegalArgumentException if there's no such move
 	 */
-	private void findShortestPaths() {
-
-        initPaths();
-
-		//Create a queue and add the Goal State to the queue
-		ArrayList<Integer> queue = new ArrayList<Integer>();
-		queue.add(GOAL_STATE);
-		int currState;
-		int transitionChar;
-
-
-		while (!queue.isEmpty()) {
-			//Grab the element at the front of the queue
-			currState = queue.get(0);
-			queue.remove(0);
-
-			//Move through each state that doesn't have a path yet. Find the
-			//transition from that state to the current state.
-			for (int i = 0; i < NUM_STATES; i++) {
-
-                //skip the ones that have a path
-                if (paths[i] != null) continue;
-
-				transitionChar = hasTransition(i, currState);
-
-				//If state i has a transition to the current state and has no
-				//path, set the path for state i equal to the transition
-				//character from state i to the current state added to the front
-				//of the shortest path to the current state, and add state i
-				//onto the queue.
-				if (transitionChar != -1) {
-					paths[i] = alphabet[transitionChar] + paths[currState];
-					queue.add(i);
-				}
-			}
-
-        		 //detect if any state does not have a path to the goal
-			boolean noPath = false;
-			for(int i = 0; i < paths.length; i++){
-				if(paths[i] == null){
-					noPath = true;
-				}
-			}
-
-            		//If there is a state with no path to the goal, we have a bum state
-            		//machine. Regenerate and try again
-			if(queue.size() == 0 && noPath){
-				generateStateMachine();
-				findShortestPaths();  //recurse
-				return;
-			}
+	private int step(int action) {
+		checkAction(action, machine.getAlphabetSize());
+		int newState = machine.next(currentState, action);
+		int sensed = NO_TRANSITION;
+		pendingTicks++;
+		stepsSinceGoal++;
+
+		// If the attempted letter brings us to a new state
+		// update the current state
+		if(newState != currentState){
+			currentState = newState;
+			sensed = TRANSITION_ONLY;
 		}
+		else {
+			pendingSelfLoops++;
+		}
+
+		// If we have reached the goal, start over elsewhere
+		if(newState == machine.getGoalState()){
+			sensed = GOAL;
+			if (metrics != null) metrics.recordGoal(stepsSinceGoal);
+			stepsSinceGoal = 0;
+			reset();
+		}
+		else if (pendingTicks >= METRICS_FLUSH_TICKS) {
+			flushMetrics();
+		}
+
+		return sensed;
 	}
 
-    /**
-     * prints the average length of all shortest paths (used for data baseline)
-     */
-    public void printAvgPathLen() {
-        int sum = 0;
-        for(int i = 0; i < NUM_STATES-1; ++i)
-        {
-            sum += paths[i].length();
+	/**
+	 * Hands the counts this session has been keeping to its metrics.  This
+	 * happens every time the goal is reached and every METRICS_FLUSH_TICKS
+	 * moves; agents call it at the end of a run to count the rest.
+	 */
+	public void flushMetrics() {
+		if (metrics != null) metrics.add(pendingTicks, pendingSelfLoops);
+		pendingTicks = 0;
+		pendingSelfLoops = 0;
+	}
 
-        }
-        System.out.println("average shortest path len: " + sum / (NUM_STATES - 1));
-    }
+	/**
+	 * @param metrics where this session should report what it does (null to
+	 *                stop reporting)
+	 */
+	public void setMetrics(EnvironmentMetrics metrics) {
+		flushMetrics();
+		this.metrics = metrics;
+	}
+
+	/** @return where this session reports what it does (may be null) */
+	public EnvironmentMetrics getMetrics() {
+		return metrics;
+	}
 
 	/**
-	 * A helper method that prints the shortest path from each state to the goal.
+	 * ************************************************************************************
+	 * METHODS FOR CHANGING THE MACHINE (only if it's a DynamicStateMachine)
+	 * ************************************************************************************
 	 */
-	public void printPaths() {
-		System.out.println("#####Paths: ");
-		for (int i = 0; i < paths.length; ++i) {
-			System.out.println("#S" + i + ": " + paths[i]);
-		}
+
+	/** @see DynamicStateMachine#setTransition */
+	public void setTransition(int state, int action, int target) {
+		dynamicMachine().setTransition(state, action, target);
+	}
+
+	/** @see DynamicStateMachine#removeTransition */
+	public void removeTransition(int state, int action) {
+		dynamicMachine().removeTransition(state, action);
 	}
 
 	/**
-	 * Calculates which state the agent would be in if it followed a given path
-	 * from a given starting state.
-     *
-     * CAVEAT:  caller is responsible for providing a valid path
-     *
-     * @param begin state the agent starts in
-     * @param path  path the agent follows
-     *
-     * @return the id of the result state or -1 for invalid path
+	 * Moves the goal.  If the agent is standing on the new goal it starts
+	 * over somewhere else.
+	 *
+	 * @see DynamicStateMachine#setGoalState
 	 */
-	public int pathResult(int begin, String path) {
-        if (path == null) return -1;
+	public void setGoalState(int state) {
+		dynamicMachine().setGoalState(state);
+		if (currentState == state) reset();
+	}
+
+	private DynamicStateMachine dynamicMachine() {
+		if (!(machine instanceof DynamicStateMachine)) {
+			throw new UnsupportedOperationException("this environment's machine can't be changed");
+		}
+		return (DynamicStateMachine)machine;
+	}
+
+	/** @return the state this session is currently in */
+	public int getCurrentState() {
+		return currentState;
+	}
 
-        //Step through each step of the path
-        int currState = begin;
-        for(int i = 0; i < path.length(); ++i) {
-            char action = path.charAt(i);
-            currState = transition[currState][findAlphabetIndex(action)];
-            if (currState == -1) return -1;
-        }//for
+	/** @return the seed this session's random number generator started from */
+	public long getSeed() {
+		return seed;
+	}
 
-        return currState;
-	}//pathResult
+	/** @return the machine this session is exploring */
+	public StateMachine getMachine() {
+		return machine;
+	}
 
     /**
-     * class PathNode
-     *
-     * used to contain info for the short path search.  Each node contains a
-     * path and the current position the agent would be in having followed that
-     * path from each state as well as 'h' and 'g' values to support A*
-     * searching
+     * ************************************************************************************
+     * METHODS THAT DELEGATE TO THE MACHINE
+     * ************************************************************************************
      */
-    public class PathNode implements Comparable<PathNode> {
-        public String path = "";
-        public int[] currStates = new int[NUM_STATES];
-        public int g = 0;
-        public int h;
-
-        /** default ctor */
-        public PathNode() {
-            for(int i = 0; i < NUM_STATES; ++i) {
-                currStates[i] = i;
-            }
-            updateH();
-        }
-
-        /** copy ctor */
-        public PathNode(PathNode parent) {
-            path = parent.path;
-            for(int i = 0; i < NUM_STATES; ++i) {
-                currStates[i] = parent.currStates[i];
-            }
-            g = parent.g;
-            h = parent.h;
-        }
-
-        /** calculate the 'h' (heuristic) value for A* search.  In this case
-         * it's the length of the longest remaining shortest path */
-        public void updateH() {
-            h = 0;
-            for(int i = 0; i < NUM_STATES; ++i) {
-                h += paths[currStates[i]].length();
-            }
-        }//updateH
-
-        /** the 'f' value for A* search */
-        public int getF() { return h + g; }
-
-        /** this method is for the Comparable interface so that we can use this
-         * node in a sorted collection */
-        public int compareTo(PathNode other) {
-            return getF() - other.getF();
-        }
-
-        /** appends a new action to the path and adjusts the states accordingly */
-        public void advance(char action) {
-            for(int i = 0; i < NUM_STATES; ++i) {
-                if (currStates[i] != GOAL_STATE) {
-                    currStates[i] = pathResult(currStates[i], "" + action);
-                }
-            }
-            path = path + action;
-            g++;
-            updateH();
-        }//advance
-
-        /** @return true if the agent would reach the goal from all states with
-          * this node's path
-          */
-        public boolean allGoal() {
-            for(int i = 0; i < NUM_STATES; ++i) {
-                if (currStates[i] != GOAL_STATE) return false;
-            }
-
-            return true;
-        }//allGoal
-
-    }//PathNode
 
-    /**
-     * Calculates the shortest path to the goal if the agent has a perfect model
-     * of the environment but does not know what state it has started in.  This
-     * method uses A* search to reduce resource usage.
-     *
-     * CAVEAT: This method is solving an NP-hard probelm and can take a really
-     * long time to execute on larger FSMs.
+    public void printStateMachine() {
+        machine.printStateMachine();
+    }
+
+    public void printStateMachineGraph() {
+        machine.printStateMachineGraph();
+    }
+
+    public void writeTable(Appendable out) throws IOException {
+        machine.writeTable(out);
+    }
+
+    public void writeGraphviz(Appendable out) throws IOException {
+        machine.writeGraphviz(out);
+    }
+
+    public void printAvgPathLen() {
+        machine.printAvgPathLen();
+    }
+
+	public void printPaths() {
+		machine.printPaths();
+	}
+
+	public String pathFrom(int state) {
+		return machine.pathFrom(state);
+	}
+
+	public int pathResult(int begin, String path) {
+		return machine.pathResult(begin, path);
+	}
+
+	public int pathResult(int begin, int[] path) {
+		return machine.pathResult(begin, path);
+	}
 
-     */
     public String shortestBlindPathToGoal() {
-        //An ordered set containing this initial node
-        PathNode pn = new PathNode();
-        TreeSet<PathNode> queue = new TreeSet<PathNode>();
-        queue.add(pn);
+        return machine.shortestBlindPathToGoal();
+    }
 
-        //Main search loop
-        while(! queue.isEmpty()) {
-            PathNode parent = queue.first();
-            queue.remove(parent);
-            for(char c : alphabet) {
+    public int[] shortestBlindPath() {
+        return machine.shortestBlindPath();
+    }
 
-                //Create a child node with this action
-                PathNode node = new PathNode(parent);
-                node.advance(c);
+    public int[] shortestBlindPath(int numThreads) {
+        return machine.shortestBlindPath(numThreads);
+    }
 
-                //Did we find the shortest path?
-                if (node.allGoal()) return node.path;
+    public int[] greedyBlindPath() {
+        return machine.greedyBlindPath();
+    }
 
-                //Use this node as parent for future searching
-                queue.add(node);
-            }//for
-        }//while
+    public int[] boundedBlindPath(long budgetMillis) {
+        return machine.boundedBlindPath(budgetMillis);
+    }
 
-        return "OOPS!"; //should not be reached
-    }//shortestBlindPathToGoal
+    public MinimizedMachine minimize() {
+        return machine.minimize();
+    }
 
-    /**
-     * Calculates how many steps the agent will take to reach the goal from any
-     * state in the FSM given a path that will reach the goal from any state in
-     * the FSM (@see #shortPathToGoal)
-     *
-     * CAVEAT:  User is responsible for providing a valid path
-     *
-     * @param path  the path to evaluate
-     *
-     * @return the average steps or -1 if path doesn't reach goal from all states
-     *
-     */
     public int avgStepsToGoalWithPath(String path) {
-        int sum = 0; //sum of steps to each goal
-        int goalCount = 0;  //how many states we've reached goal from
-
-        //what state I'd be in if I started at each state and followed the path
-        //so far (this has the same use as in shortPathToGoal)
-        int[] currStates = new int[NUM_STATES];
-        for(int i = 0; i < NUM_STATES; ++i) {
-            currStates[i] = i;
-        }
-
-        //Iterate over each action in the path
-        for(int c = 0; c < path.length(); ++c) {
-            char action = path.charAt(c);
-
-            //Take the action in each curr state that hasn't reached the goal
-            //yet and see if agent reaches the goal
-            for(int i = 0; i < NUM_STATES; ++i) {
-                if (currStates[i] != GOAL_STATE) {
-                    currStates[i] = transition[currStates[i]][findAlphabetIndex(action)];
-                    if (currStates[i] == GOAL_STATE) {
-                        sum += c;
-                        goalCount++;
-                    }
-                }//if
-            }//for
-        }//for
-
-        //Check for invalid path
-        if (goalCount != NUM_STATES - 1) return -1;
-
-        return sum / goalCount;
-    }//avgStepsToGoalWithPath
+        return machine.avgStepsToGoalWithPath(path);
+    }
+
+    public int avgStepsToGoalWithPath(int[] path) {
+        return machine.avgStepsToGoalWithPath(path);
+    }
 
+    public CompiledPath compile(int[] path) {
+        return machine.compile(path);
+    }
 
 	public String[] getPaths() {
-		return paths;
+		return machine.getPaths();
+	}
+
+	public int getDistance(int state) {
+		return machine.getDistance(state);
+	}
+
+	public int getNextAction(int state) {
+		return machine.getNextAction(state);
+	}
+
+	public int getPairDistance(int p, int q) {
+		return machine.getPairDistance(p, q);
 	}
 
     public char[] getAlphabet() {
-        return alphabet;
+        return machine.getAlphabet();
+    }
+
+    public int getAlphabetSize() {
+        return machine.getAlphabetSize();
     }
 
+	public int findAlphabetIndex(char letter) {
+		return machine.findAlphabetIndex(letter);
+	}
+
 	public int[][] getTransition() {
-		return transition;
+		return machine.getTransition();
 	}
 
 }
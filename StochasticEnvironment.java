@@ -0,0 +1,176 @@
+/**
+ * <!-- class StochasticEnvironment -->
+ *
+ * The counterpart of {@link StateMachineEnvironment} for a
+ * {@link StochasticStateMachine}: moves lead to random states and the
+ * agent's two sensors (did I move to a new state? did I reach the goal?) can
+ * each be wrong with some probability.  Whether the agent really reached the
+ * goal is never in doubt to the environment though: it always starts over
+ * in a random non-goal state when it gets there.
+ *
+ * A move costs about the same as a deterministic one: one 64-bit random
+ * number picks the outcome and, only if a sensor is noisy, one more decides
+ * whether the sensors lie.
+ *
+ * @version February 26 2015
+ */
+public class StochasticEnvironment {
+
+	//These are used as indexes into the the sensor array
+	private static final int IS_NEW_STATE = 0;
+	private static final int IS_GOAL = 1;
+
+	private final StochasticStateMachine machine;  //shared, read-only
+	private int currentState;
+	private boolean reachedGoal;  //did the last step really reach the goal?
+
+	//chances (as unsigned 32-bit fractions of 1) that each sensor is flipped
+	private final int newStateNoise;
+	private final int goalNoise;
+
+	//state of the SplitMix64 generator that drives every random choice
+	private long rngState;
+	private final long seed;  //seed the generator started from (for replays)
+
+	/**
+	 * Creates a new session with perfect sensors
+	 */
+	public StochasticEnvironment(StochasticStateMachine machine, long seed) {
+		this(machine, 0.0, 0.0, seed);
+	}
+
+	/**
+	 * Creates a new session with noisy sensors
+	 *
+	 * @param newStateNoise chance the "new state" sensor reads wrong
+	 * @param goalNoise     chance the "goal" sensor reads wrong
+	 * @param seed          drives every random outcome and reset
+	 */
+	public StochasticEnvironment(StochasticStateMachine machine, double newStateNoise,
+	                             double goalNoise, long seed) {
+		this.machine = machine;
+		this.newStateNoise = toFraction(newStateNoise);
+		this.goalNoise = toFraction(goalNoise);
+		this.seed = seed;
+		rngState = seed;
+		currentState = 0;
+	}
+
+	/** @return the given probability as an unsigned 32-bit fraction of 1 */
+	private static int toFraction(double p) {
+		if (p < 0.0 || p > 1.0) throw new IllegalArgumentException("not a probability: " + p);
+		return (p >= 1.0) ? -1 : (int)(long)(p * 4294967296.0);
+	}
+
+	/**
+	 * A method which takes in a move from the agent and updates
+	 * the current state and the agent's sensors if needed.
+	 *
+	 * @param move
+	 * 		The move the agent is making (an index into the alphabet)
+	 * @return
+	 * 		The agent's updated (possibly wrong) sensors
+	 * @throws IllegalArgumentException if there's no such move
+	 */
+	public boolean[] tick(int move) {
+		boolean[] sensors = {false, false};
+		int sensed = step(move);
+
+		if(sensed != StateMachineEnvironment.NO_TRANSITION){
+			sensors[IS_NEW_STATE] = true;
+		}
+		if(sensed == StateMachineEnvironment.GOAL){
+			sensors[IS_GOAL] = true;
+		}
+
+		return sensors;
+	}
+
+	/**
+	 * Executes a sequence of moves in one call.  Each move's sensor result is
+	 * written to sensorsOut encoded as StateMachineEnvironment.NO_TRANSITION,
+	 * TRANSITION_ONLY or GOAL.  Execution stops right after the goal is
+	 * really reached (whatever the sensor says).
+	 *
+	 * @param moves      the moves to make (indexes into the alphabet)
+	 * @param length     how many of the moves to make
+	 * @param sensorsOut receives the encoded sensors for each move taken
+	 * @return the number of moves actually taken
+	 * @throws IllegalArgumentException if a move isn't in the alphabet (the
+	 *         moves before it have been taken)
+	 */
+	public int tick(int[] moves, int length, int[] sensorsOut) {
+		for (int i = 0; i < length; i++) {
+			sensorsOut[i] = step(moves[i]);
+			if (reachedGoal) return i + 1;
+		}
+		return length;
+	}
+
+	/**
+	 * takes one move and updates the current state
+	 *
+	 * @return the encoded (possibly wrong) sensor value for the move
+	 */
+	private int step(int action) {
+		//checked before drawing so a bad move doesn't disturb the generator
+		StateMachineEnvironment.checkAction(action, machine.getAlphabetSize());
+		int newState = machine.sample(currentState, action, nextLong());
+		boolean moved = (newState != currentState);
+		reachedGoal = (newState == machine.getGoalState());
+
+		currentState = newState;
+		if (reachedGoal) reset();
+
+		//the sensors lie independently of each other
+		boolean sensedGoal = reachedGoal;
+		if (newStateNoise != 0 || goalNoise != 0) {
+			long bits = nextLong();
+			if (Integer.compareUnsigned((int)(bits >>> 32), newStateNoise) < 0) moved = !moved;
+			if (Integer.compareUnsigned((int)bits, goalNoise) < 0) sensedGoal = !sensedGoal;
+		}
+
+		if (sensedGoal) return StateMachineEnvironment.GOAL;
+		return moved ? StateMachineEnvironment.TRANSITION_ONLY : StateMachineEnvironment.NO_TRANSITION;
+	}
+
+	/**
+	 * Resets the current state back to a state not the goal
+	 */
+	private void reset() {
+		int randoState = (int)(((nextLong() >>> 32) * (machine.getNumStates() - 1)) >>> 32);
+		if (randoState >= machine.getGoalState()) randoState++;  //skip the goal
+		currentState = randoState;
+	}
+
+	/** @return the next 64 random bits from the SplitMix64 generator */
+	private long nextLong() {
+		return SplitMix64.mix64(rngState += SplitMix64.GOLDEN_GAMMA);
+	}
+
+	/** @return the state this session is currently in */
+	public int getCurrentState() {
+		return currentState;
+	}
+
+	/** @return the seed this session's random number generator started from */
+	public long getSeed() {
+		return seed;
+	}
+
+	/** @return the machine this session is exploring */
+	public StochasticStateMachine getMachine() {
+		return machine;
+	}
+
+	/** @see StochasticStateMachine#getExpectedDistance */
+	public double getExpectedDistance(int state) {
+		return machine.getExpectedDistance(state);
+	}
+
+	/** @see StochasticStateMachine#getPolicyAction */
+	public int getPolicyAction(int state) {
+		return machine.getPolicyAction(state);
+	}
+
+}//class StochasticEnvironment
@@ -0,0 +1,388 @@
+import java.util.Arrays;
+
+/**
+ * <!-- class StochasticStateMachine -->
+ *
+ * A state machine whose transitions are random: taking an action in a state
+ * leads to one of several states, each with its own probability.  The last
+ * state is the goal.
+ *
+ * Each (state, action) pair's outcomes are stored as an alias table (Vose's
+ * method), so picking an outcome takes one random number and one comparison
+ * no matter how many outcomes there are.  Every pair's table is padded to
+ * the same number of slots (the most outcomes any pair has) and they are
+ * packed back-to-back like a {@link TransitionTable}, so finding a pair's
+ * table is just arithmetic.
+ *
+ * The counterpart of a deterministic machine's shortest paths is the
+ * expected number of steps to the goal from each state when always taking
+ * the best action, found by value iteration the first time it's asked for.
+ *
+ * Like {@link StateMachine} this is immutable and can be shared by any
+ * number of {@link StochasticEnvironment}s.
+ *
+ * @version February 26 2015
+ */
+public class StochasticStateMachine {
+
+    /** value iteration stops once no expected distance changes by more than this */
+    public static final double EPSILON = 1e-9;
+
+    /** value iteration gives up after this many sweeps */
+    public static final int MAX_ITERATIONS = 100000;
+
+    private final int numStates;
+    private final int alphabetSize;
+    private final int goalState;
+
+    //outcomes of (state, action) are entries cellStart[c] through
+    //cellStart[c+1]-1 with c = state * alphabetSize + action
+    private final int[] cellStart;
+    private final int[] targets;   //each outcome's state
+    private final double[] probs;  //and its probability
+
+    //the alias tables: each cell has width slots of three ints (cutoff,
+    //primary, alias).  A slot is picked uniformly, then its primary state is
+    //used if a random threshold falls below cutoff, otherwise its alias.
+    //(Cutoffs are unsigned 32-bit fractions of 1.)
+    private final int width;
+    private final int[] slots;
+
+    //expected steps to goal and best action from each state (built on demand)
+    private volatile double[] expectedDistance;
+    private int[] policy;
+
+    /**
+     * Builds a machine from the outcomes of each (state, action) pair.
+     *
+     * @param targets targets[state][action] lists the states the action can
+     *                lead to
+     * @param probs   probs[state][action] lists their probabilities (which
+     *                are normalized if they don't quite add up to 1)
+     */
+    public StochasticStateMachine(int[][][] targets, double[][][] probs) {
+        numStates = targets.length;
+        alphabetSize = targets[0].length;
+        goalState = numStates - 1;
+
+        cellStart = new int[numStates * alphabetSize + 1];
+        int total = 0;
+        int most = 1;
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                if (targets[i][j].length == 0 || targets[i][j].length != probs[i][j].length) {
+                    throw new IllegalArgumentException("bad outcomes for state " + i
+                                                       + " action " + j);
+                }
+                cellStart[i * alphabetSize + j] = total;
+                total += targets[i][j].length;
+                most = Math.max(most, targets[i][j].length);
+            }
+        }
+        cellStart[numStates * alphabetSize] = total;
+
+        this.targets = new int[total];
+        this.probs = new double[total];
+        width = most;
+        slots = new int[Math.multiplyExact(3 * width, numStates * alphabetSize)];
+
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                int start = cellStart[i * alphabetSize + j];
+                int count = targets[i][j].length;
+                double sum = 0.0;
+                for (int k = 0; k < count; ++k) {
+                    if (probs[i][j][k] < 0.0) {
+                        throw new IllegalArgumentException("negative probability for state "
+                                                           + i + " action " + j);
+                    }
+                    sum += probs[i][j][k];
+                }
+                for (int k = 0; k < count; ++k) {
+                    this.targets[start + k] = targets[i][j][k];
+                    this.probs[start + k] = probs[i][j][k] / sum;
+                }
+                buildAliasTable(i * alphabetSize + j, start, count);
+            }
+        }
+    }//ctor
+
+    /**
+     * Makes a "slippery" version of a deterministic machine: each action does
+     * what it would have done with probability 1 - slip and otherwise acts
+     * like an action picked at random (possibly itself).
+     */
+    public static StochasticStateMachine slippery(StateMachine machine, double slip) {
+        int numStates = machine.getNumStates();
+        int alphabetSize = machine.getAlphabetSize();
+        int[][][] targets = new int[numStates][alphabetSize][];
+        double[][][] probs = new double[numStates][alphabetSize][];
+
+        int[] outcome = new int[alphabetSize + 1];
+        double[] chance = new double[alphabetSize + 1];
+        for (int i = 0; i < numStates; ++i) {
+            for (int j = 0; j < alphabetSize; ++j) {
+                //merge the outcomes that lead to the same state
+                int count = 0;
+                for (int b = -1; b < alphabetSize; ++b) {
+                    int target = machine.next(i, (b < 0) ? j : b);
+                    double p = (b < 0) ? 1.0 - slip : slip / alphabetSize;
+                    int k = 0;
+                    while (k < count && outcome[k] != target) k++;
+                    if (k == count) {
+                        outcome[count] = target;
+                        chance[count++] = 0.0;
+                    }
+                    chance[k] += p;
+                }
+                targets[i][j] = Arrays.copyOf(outcome, count);
+                probs[i][j] = Arrays.copyOf(chance, count);
+            }
+        }
+        return new StochasticStateMachine(targets, probs);
+    }//slippery
+
+    /**
+     * fills in the alias table of the given cell from its outcomes at
+     * [start, start + count) (Vose's method).  Slots past the outcomes start
+     * out empty and so always use their alias.
+     */
+    private void buildAliasTable(int cell, int start, int count) {
+        double[] scaled = new double[width];
+        int[] small = new int[width];
+        int[] large = new int[width];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int k = 0; k < width; ++k) {
+            scaled[k] = (k < count) ? probs[start + k] * width : 0.0;
+            if (scaled[k] < 1.0) small[numSmall++] = k;
+            else large[numLarge++] = k;
+        }
+
+        //pair each slot that's too small with the rest of a large one
+        while (numSmall > 0 && numLarge > 0) {
+            int s = small[--numSmall];
+            int l = large[--numLarge];
+            int target = targets[start + l];
+            setSlot(cell, s, (s < count) ? targets[start + s] : target, target, scaled[s]);
+            scaled[l] -= 1.0 - scaled[s];
+            if (scaled[l] < 1.0) small[numSmall++] = l;
+            else large[numLarge++] = l;
+        }
+
+        //whatever's left is full (up to rounding)
+        while (numLarge > 0) {
+            int l = large[--numLarge];
+            setSlot(cell, l, targets[start + l], targets[start + l], 1.0);
+        }
+        while (numSmall > 0) {
+            int s = small[--numSmall];
+            int target = targets[start + Math.min(s, count - 1)];
+            setSlot(cell, s, target, target, 1.0);
+        }
+    }//buildAliasTable
+
+    private void setSlot(int cell, int k, int first, int second, double chance) {
+        //a full slot is its own alias so rounding the cutoff can't matter
+        int slot = 3 * (cell * width + k);
+        slots[slot] = (chance >= 1.0) ? -1 : (int)(long)(chance * 4294967296.0);
+        slots[slot + 1] = first;
+        slots[slot + 2] = (chance >= 1.0) ? first : second;
+    }
+
+    /**
+     * Picks the state reached by taking the given action in the given state.
+     *
+     * @param bits 64 random bits: the high half picks a slot in the alias
+     *             table and the low half decides between it and its alias
+     * @throws IllegalArgumentException if there's no such action
+     */
+    public int sample(int state, int action, long bits) {
+        StateMachineEnvironment.checkAction(action, alphabetSize);
+        int slot = 3 * ((state * alphabetSize + action) * width
+                        + (int)(((bits >>> 32) * width) >>> 32));
+
+        //1 if the threshold falls below the cutoff (without a branch, since
+        //which way it goes is as unpredictable as we can make it)
+        int below = (int)(((bits & 0xffffffffL) - (slots[slot] & 0xffffffffL)) >>> 63);
+        return slots[slot + 2 - below];
+    }
+
+    /**
+     * @return the probability that taking the given action in the given
+     *         state leads to the given target
+     */
+    public double probability(int state, int action, int target) {
+        int cell = state * alphabetSize + action;
+        double p = 0.0;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+            if (targets[k] == target) p += probs[k];
+        }
+        return p;
+    }
+
+    /**
+     * ************************************************************************************
+     * METHODS FOR EXPECTED DISTANCES
+     * ************************************************************************************
+     */
+
+    /**
+     * @return the expected number of steps from the given state to the goal
+     *         when always taking the best action (infinite if the goal can't
+     *         be reached for sure)
+     */
+    public double getExpectedDistance(int state) {
+        return expectedDistances()[state];
+    }
+
+    /**
+     * @return the action that minimizes the expected number of steps to the
+     *         goal from the given state (-1 at the goal or if the goal can't
+     *         be reached for sure)
+     */
+    public int getPolicyAction(int state) {
+        expectedDistances();
+        return policy[state];
+    }
+
+    private double[] expectedDistances() {
+        double[] result = expectedDistance;
+        if (result == null) {
+            synchronized (this) {
+                result = expectedDistance;
+                if (result == null) {
+                    result = valueIteration();
+                    expectedDistance = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the expected steps to the goal from each state by value
+     * iteration.  States that can't reach the goal for sure are found first
+     * (they're infinitely far away) and everything else starts at zero and
+     * is swept (in place) until nothing changes by more than EPSILON.
+     */
+    private double[] valueIteration() {
+        double[] value = new double[numStates];
+        int[] best = new int[numStates];
+        boolean[] proper = findProperStates();
+
+        for (int i = 0; i < numStates; ++i) {
+            if (!proper[i]) value[i] = Double.POSITIVE_INFINITY;
+            best[i] = -1;
+        }
+
+        for (int iteration = 0; iteration < MAX_ITERATIONS; ++iteration) {
+            double change = 0.0;
+            for (int i = 0; i < numStates; ++i) {
+                if (i == goalState || !proper[i]) continue;
+
+                double bestValue = Double.POSITIVE_INFINITY;
+                for (int j = 0; j < alphabetSize; ++j) {
+                    int cell = i * alphabetSize + j;
+                    double q = 1.0;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+                        //an outcome that can't happen costs nothing even if
+                        //it's infinitely far away (0 * infinity is NaN)
+                        if (probs[k] > 0.0) q += probs[k] * value[targets[k]];
+                    }
+                    if (q < bestValue) {
+                        bestValue = q;
+                        best[i] = j;
+                    }
+                }
+                change = Math.max(change, Math.abs(bestValue - value[i]));
+                value[i] = bestValue;
+            }
+            if (change <= EPSILON) break;
+        }
+
+        policy = best;
+        return value;
+    }//valueIteration
+
+    /**
+     * @return which states have an action that's sure to keep them among
+     *         states that can reach the goal.  States that can't even
+     *         possibly reach the goal are removed first, then (repeatedly)
+     *         states all of whose actions risk landing on a removed state.
+     */
+    private boolean[] findProperStates() {
+        //predecessors of each state as (state, action) cells, in compressed form
+        int[] predStart = new int[numStates + 1];
+        for (int k = 0; k < targets.length; ++k) {
+            predStart[targets[k] + 1]++;
+        }
+        for (int i = 0; i < numStates; ++i) {
+            predStart[i + 1] += predStart[i];
+        }
+        int[] preds = new int[targets.length];
+        int[] fill = Arrays.copyOf(predStart, numStates);
+        for (int cell = 0; cell < numStates * alphabetSize; ++cell) {
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+                preds[fill[targets[k]]++] = cell;
+            }
+        }
+
+        boolean[] proper = new boolean[numStates];
+        Arrays.fill(proper, true);
+        int[] queue = new int[numStates];
+
+        boolean changed = true;
+        while (changed) {
+            //which of the remaining states can possibly reach the goal using
+            //only actions that can't leave the remaining states?  (breadth
+            //first backwards from the goal)
+            boolean[] reaches = new boolean[numStates];
+            int head = 0;
+            int tail = 0;
+            reaches[goalState] = true;
+            queue[tail++] = goalState;
+            while (head < tail) {
+                int t = queue[head++];
+                for (int p = predStart[t]; p < predStart[t + 1]; ++p) {
+                    int i = preds[p] / alphabetSize;
+                    if (proper[i] && !reaches[i] && safe(i, preds[p] % alphabetSize, proper)) {
+                        reaches[i] = true;
+                        queue[tail++] = i;
+                    }
+                }
+            }
+
+            changed = false;
+            for (int i = 0; i < numStates; ++i) {
+                if (proper[i] && !reaches[i]) {
+                    proper[i] = false;
+                    changed = true;
+                }
+            }
+        }
+        return proper;
+    }//findProperStates
+
+    /** @return true if every outcome of the action is in the given set */
+    private boolean safe(int state, int action, boolean[] set) {
+        int cell = state * alphabetSize + action;
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; ++k) {
+            if (probs[k] > 0.0 && !set[targets[k]]) return false;
+        }
+        return true;
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    public int getGoalState() {
+        return goalState;
+    }
+
+    public int getAlphabetSize() {
+        return alphabetSize;
+    }
+
+}//class StochasticStateMachine
@@ -47,8 +47,8 @@ public class TestNewAgent extends NewAgent{
 
     for (int p = 0; p<COMPARE_SIZE; p++)
     {
-      originalChars[p] = originalSequence[p].command;
-      foundChars[p] = foundSequence[p].command;
+      originalChars[p] = StateMachine.symbolFor(originalSequence[p].command);
+      foundChars[p] = StateMachine.symbolFor(foundSequence[p].command);
     }
 
     System.out.println(Arrays.toString(originalChars));
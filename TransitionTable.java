@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+
+/**
+ * <!-- class TransitionTable -->
+ *
+ * A packed transition table for a state machine.  Rows are laid out
+ * back-to-back (row-major) so the entry for a given (state, action) pair
+ * lives at index state * alphabetSize + action and a single environment step
+ * is one array load instead of a pointer chase through an int[][].
+ *
+ * Machines small enough to number their states in 16 bits store the table as
+ * chars, which halves its footprint (and its cache pressure) compared to ints.
+ *
+ * @version February 26 2015
+ */
+public abstract class TransitionTable {
+
+    /** machines with at most this many states use the narrow (char) layout */
+    public static final int NARROW_LIMIT = Character.MAX_VALUE + 1;
+
+    protected final int numStates;
+    protected final int alphabetSize;
+
+    protected TransitionTable(int numStates, int alphabetSize) {
+        this.numStates = numStates;
+        this.alphabetSize = alphabetSize;
+    }
+
+    /**
+     * creates an empty table using the narrowest layout that can hold the
+     * given number of states
+     */
+    public static TransitionTable allocate(int numStates, int alphabetSize) {
+        if (numStates <= NARROW_LIMIT) {
+            return new Narrow(numStates, alphabetSize);
+        }
+        return new Wide(numStates, alphabetSize);
+    }
+
+    /**
+     * creates an empty table outside the Java heap (@see OffHeapIntArray) for
+     * machines too big to keep on it
+     */
+    public static TransitionTable allocateOffHeap(int numStates, int alphabetSize) {
+        return new OffHeap(numStates, alphabetSize,
+                           OffHeapIntArray.allocate((long)numStates * alphabetSize));
+    }
+
+    /**
+     * maps the given file as a table (its transitions are stored row-major,
+     * as in a {@link MachineCorpus} record).  The file is created if needed.
+     */
+    public static TransitionTable mapOffHeap(File file, int numStates, int alphabetSize)
+        throws IOException {
+        return new OffHeap(numStates, alphabetSize,
+                           OffHeapIntArray.map(file, (long)numStates * alphabetSize));
+    }
+
+    /**
+     * packs a jagged transition table (indexed [state][action]) into a new
+     * TransitionTable
+     */
+    public static TransitionTable pack(int[][] rows, int alphabetSize) {
+        TransitionTable table = allocate(rows.length, alphabetSize);
+        for(int i = 0; i < rows.length; ++i) {
+            for(int j = 0; j < alphabetSize; ++j) {
+                table.set(i, j, rows[i][j]);
+            }
+        }
+        return table;
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    public int getAlphabetSize() {
+        return alphabetSize;
+    }
+
+    /**
+     * @return the state reached by taking the given action (an index into the
+     *         alphabet) in the given state
+     */
+    public abstract int next(int state, int action);
+
+    /** sets the state reached by taking the given action in the given state */
+    abstract void set(int state, int action, int target);
+
+    /** @return a copy of this table in the jagged [state][action] layout */
+    public int[][] toJagged() {
+        int[][] rows = new int[numStates][alphabetSize];
+        for(int i = 0; i < numStates; ++i) {
+            for(int j = 0; j < alphabetSize; ++j) {
+                rows[i][j] = next(i, j);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * class Narrow
+     *
+     * stores state ids as unsigned 16-bit values
+     */
+    static final class Narrow extends TransitionTable {
+        private final char[] cells;
+
+        Narrow(int numStates, int alphabetSize) {
+            super(numStates, alphabetSize);
+            cells = new char[Math.multiplyExact(numStates, alphabetSize)];
+        }
+
+        public int next(int state, int action) {
+            return cells[state * alphabetSize + action];
+        }
+
+        void set(int state, int action, int target) {
+            cells[state * alphabetSize + action] = (char)target;
+        }
+    }//class Narrow
+
+    /**
+     * class Wide
+     *
+     * stores state ids as plain ints
+     */
+    static final class Wide extends TransitionTable {
+        private final int[] cells;
+
+        Wide(int numStates, int alphabetSize) {
+            super(numStates, alphabetSize);
+            cells = new int[Math.multiplyExact(numStates, alphabetSize)];
+        }
+
+        public int next(int state, int action) {
+            return cells[state * alphabetSize + action];
+        }
+
+        void set(int state, int action, int target) {
+            cells[state * alphabetSize + action] = target;
+        }
+    }//class Wide
+
+    /**
+     * class Mapped
+     *
+     * reads state ids straight out of a buffer (typically a memory-mapped
+     * file, @see MachineCorpus) so many processes can share one copy of the
+     * table.  Mapped tables are read-only.
+     */
+    static final class Mapped extends TransitionTable {
+        private final IntBuffer cells;
+
+        Mapped(int numStates, int alphabetSize, IntBuffer cells) {
+            super(numStates, alphabetSize);
+            if (cells.capacity() != Math.multiplyExact(numStates, alphabetSize)) {
+                throw new IllegalArgumentException("buffer holds " + cells.capacity()
+                                                   + " transitions instead of "
+                                                   + numStates * alphabetSize);
+            }
+            this.cells = cells;
+        }
+
+        public int next(int state, int action) {
+            return cells.get(state * alphabetSize + action);
+        }
+
+        void set(int state, int action, int target) {
+            throw new UnsupportedOperationException("mapped transition tables are read-only");
+        }
+    }//class Mapped
+
+    /**
+     * class OffHeap
+     *
+     * stores state ids outside the Java heap, indexed with longs so that the
+     * table can have more than 2^31 - 1 transitions
+     */
+    static final class OffHeap extends TransitionTable {
+        private final OffHeapIntArray cells;
+
+        OffHeap(int numStates, int alphabetSize, OffHeapIntArray cells) {
+            super(numStates, alphabetSize);
+            if (cells.length() != (long)numStates * alphabetSize) {
+                throw new IllegalArgumentException("array holds " + cells.length()
+                                                   + " transitions instead of "
+                                                   + (long)numStates * alphabetSize);
+            }
+            this.cells = cells;
+        }
+
+        public int next(int state, int action) {
+            return cells.get((long)state * alphabetSize + action);
+        }
+
+        void set(int state, int action, int target) {
+            cells.set((long)state * alphabetSize + action, target);
+        }
+    }//class OffHeap
+
+}//class TransitionTable